@@ -0,0 +1,128 @@
+package benchmarks;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares JMH results, written with -rf json, with the results of a baseline run, and exits with status 1 if a
+ * benchmark regressed by more than a max fraction of its baseline score. Differences within the sum of the score
+ * errors of both runs are not regressions. With --update, the results become the baseline; a missing baseline is
+ * an error otherwise, so that a check never passes without comparing anything.
+ *
+ * Usage: BaselineCheck &lt;baseline.json&gt; &lt;results.json&gt; [max regression, e.g. 0.25] [--update]
+ */
+public class BaselineCheck {
+
+    private static final double DEFAULT_MAX_REGRESSION = 0.25;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineCheck <baseline.json> <results.json> [max regression] [--update]");
+            System.exit(2);
+        }
+
+        Path baselineFile = Paths.get(args[0]);
+        Path resultsFile = Paths.get(args[1]);
+        double maxRegression = args.length > 2 && !args[2].startsWith("--") ? Double.parseDouble(args[2]) : DEFAULT_MAX_REGRESSION;
+        boolean update = Arrays.asList(args).contains("--update");
+
+        Map<String, Score> results = read(resultsFile);
+        if (!update && !Files.exists(baselineFile)) {
+            System.err.println("No baseline " + baselineFile + ", record one with --update");
+            System.exit(1);
+        }
+        if (update) {
+            if (baselineFile.getParent() != null)
+                Files.createDirectories(baselineFile.getParent());
+            Files.copy(resultsFile, baselineFile, StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("Saved " + results.size() + " benchmark results as baseline " + baselineFile);
+            return;
+        }
+
+        Map<String, Score> baseline = read(baselineFile);
+        int regressions = 0;
+
+        System.out.printf("%-70s %14s %14s %8s%n", "Benchmark", "Baseline", "Score", "Change");
+        for (Map.Entry<String, Score> entry : results.entrySet()) {
+            Score score = entry.getValue();
+            Score base = baseline.get(entry.getKey());
+            if (base == null) {
+                System.out.printf("%-70s %14s %14.1f %8s  %s%n", entry.getKey(), "-", score.value, "", "new");
+                continue;
+            }
+
+            // Positive when the benchmark got faster, whatever its mode
+            double change = (score.value - base.value) / base.value * (score.higherIsBetter ? 1 : -1);
+            boolean significant = Math.abs(score.value - base.value) > score.error + base.error;
+            boolean regressed = significant && -change > maxRegression;
+            if (regressed)
+                regressions++;
+
+            System.out.printf("%-70s %14.1f %14.1f %+7.1f%%  %s%n", entry.getKey(), base.value, score.value,
+                    change * 100, regressed ? "REGRESSION" : "");
+        }
+        for (String benchmark : baseline.keySet())
+            if (!results.containsKey(benchmark))
+                System.out.printf("%-70s %14.1f %14s %8s  %s%n", benchmark, baseline.get(benchmark).value, "-", "", "not run");
+
+        if (regressions > 0) {
+            System.err.printf("%d benchmark(s) regressed by more than %.0f%% of the baseline %s%n",
+                    regressions, maxRegression * 100, baselineFile);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads the primary score of each benchmark of a JMH JSON results file, by benchmark name and parameters
+     */
+    private static Map<String, Score> read(Path file) throws IOException {
+        JSONArray runs = new JSONArray(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        Map<String, Score> scores = new LinkedHashMap<>();
+
+        for (int i = 0; i < runs.length(); i++) {
+            JSONObject run = runs.getJSONObject(i);
+            String name = run.getString("benchmark").replaceFirst("^benchmarks\\.", "");
+
+            JSONObject params = run.optJSONObject("params");
+            if (params != null) {
+                Map<String, Object> sorted = new TreeMap<>(params.toMap());
+                name += sorted.toString().replace(" ", "");
+            }
+
+            JSONObject metric = run.getJSONObject("primaryMetric");
+            String mode = run.getString("mode");
+            double error = metric.optDouble("scoreError", 0);
+            scores.put(name, new Score(metric.getDouble("score"), Double.isNaN(error) ? 0 : error,
+                    mode.equals("thrpt")));
+        }
+        return scores;
+    }
+
+    private static class Score {
+
+        private final double value;
+        private final double error;
+
+        /**
+         * True for throughput, false for times
+         */
+        private final boolean higherIsBetter;
+
+        Score(double value, double error, boolean higherIsBetter) {
+            this.value = value;
+            this.error = error;
+            this.higherIsBetter = higherIsBetter;
+        }
+    }
+}
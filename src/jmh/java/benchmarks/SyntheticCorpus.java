@@ -0,0 +1,148 @@
+package benchmarks;
+
+import domain.TweetModel;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Fixed corpus of synthetic tweets shared by the benchmarks, so that results of different runs compare.
+ * Tweets are generated from a fixed seed: words drawn from a Zipf-like vocabulary, mixed with the tracked keyword,
+ * hashtags, mentions, links, numbers and punctuation, in the proportions of collected tweets.
+ */
+public final class SyntheticCorpus {
+
+    public static final String KEYWORD = "music";
+
+    public static final int SIZE = 1000;
+
+    private static final long SEED = 42;
+
+    private static final int VOCABULARY = 5000;
+
+    private static final String[] COMMON_WORDS = {"the", "a", "to", "and", "i", "is", "in", "it", "you", "of",
+            "for", "on", "my", "this", "that", "with", "so", "me", "just", "be", "love", "new", "now", "out"};
+
+    private static final String[] PUNCTUATION = {"!", "?", "...", ",", ".", "!!", ":)", "\u2764"};
+
+    private static final SyntheticCorpus INSTANCE = new SyntheticCorpus();
+
+    private final String[] texts = new String[SIZE];
+    private final TweetModel[] tweets = new TweetModel[SIZE];
+    private final String[] statusesJson = new String[SIZE];
+
+    public static SyntheticCorpus get() {
+        return INSTANCE;
+    }
+
+    private SyntheticCorpus() {
+        Random random = new Random(SEED);
+        SimpleDateFormat twitterDate = new SimpleDateFormat("EEE MMM dd HH:mm:ss Z yyyy", Locale.ENGLISH);
+        twitterDate.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        for (int i = 0; i < SIZE; i++) {
+            texts[i] = text(random);
+            tweets[i] = new TweetModel.Builder()
+                    .setTweetID(940000000000000000L + i)
+                    .setUserID(random.nextInt(1000000))
+                    .setUserFollowersCount(random.nextInt(10000))
+                    .setUserFriendsCount(random.nextInt(1000))
+                    .setTweetText(texts[i])
+                    .setLabel("pos")
+                    .setPositiveProbability(random.nextDouble())
+                    .setNegativeProbability(random.nextDouble())
+                    .setNeutralProbability(random.nextDouble())
+                    .create();
+            statusesJson[i] = statusJson(tweets[i], twitterDate.format(new Date(1539000000000L + i * 1000L)));
+        }
+    }
+
+    /**
+     * Returns the texts of the tweets
+     */
+    public String[] texts() {
+        return texts.clone();
+    }
+
+    /**
+     * Returns copies of the tweets
+     */
+    public TweetModel[] tweets() {
+        TweetModel[] copies = new TweetModel[SIZE];
+        for (int i = 0; i < SIZE; i++)
+            copies[i] = tweets[i].copy();
+        return copies;
+    }
+
+    /**
+     * Returns the tweets as JSON statuses of the twitter stream
+     */
+    public String[] statusesJson() {
+        return statusesJson.clone();
+    }
+
+    private static String text(Random random) {
+        StringBuilder text = new StringBuilder();
+        int words = 6 + random.nextInt(20);
+        for (int w = 0; w < words; w++) {
+            if (w > 0)
+                text.append(' ');
+
+            int kind = random.nextInt(100);
+            if (kind < 5)
+                text.append(random.nextBoolean() ? KEYWORD : "#" + KEYWORD);
+            else if (kind < 9)
+                text.append('#').append(word(random));
+            else if (kind < 13)
+                text.append('@').append(word(random)).append(random.nextInt(100));
+            else if (kind < 16)
+                text.append("https://t.co/").append(Long.toString(random.nextLong() & Long.MAX_VALUE, 36).substring(0, 10));
+            else if (kind < 18)
+                text.append(random.nextInt(2020));
+            else if (kind < 50)
+                text.append(COMMON_WORDS[random.nextInt(COMMON_WORDS.length)]);
+            else
+                text.append(random.nextInt(10) == 0 ? capitalize(word(random)) : word(random));
+
+            if (random.nextInt(8) == 0)
+                text.append(PUNCTUATION[random.nextInt(PUNCTUATION.length)]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Returns a word of the vocabulary, low ranks being much more frequent
+     */
+    private static String word(Random random) {
+        int rank = (int) Math.pow(VOCABULARY, random.nextDouble());
+        StringBuilder word = new StringBuilder();
+        for (int r = rank; ; r /= 26) {
+            word.append((char) ('a' + r % 26));
+            if (r < 26)
+                break;
+        }
+        return word.toString();
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+
+    private static String statusJson(TweetModel tweet, String createdAt) {
+        return "{\"created_at\":\"" + createdAt + "\"," +
+                "\"id\":" + tweet.getTweetID() + ",\"id_str\":\"" + tweet.getTweetID() + "\"," +
+                "\"text\":\"" + tweet.getTweetText().replace("\\", "\\\\").replace("\"", "\\\"") + "\"," +
+                "\"source\":\"<a href=\\\"http://twitter.com\\\" rel=\\\"nofollow\\\">Twitter Web Client</a>\"," +
+                "\"truncated\":false,\"in_reply_to_status_id\":null,\"in_reply_to_user_id\":null," +
+                "\"user\":{\"id\":" + tweet.getUserID() + ",\"id_str\":\"" + tweet.getUserID() + "\"," +
+                "\"name\":\"User " + tweet.getUserID() + "\",\"screen_name\":\"user" + tweet.getUserID() + "\"," +
+                "\"followers_count\":" + tweet.getUserFollowersCount() + "," +
+                "\"friends_count\":" + tweet.getUserFriendsCount() + "," +
+                "\"created_at\":\"" + createdAt + "\",\"lang\":\"en\"}," +
+                "\"retweet_count\":0,\"favorite_count\":0,\"entities\":{\"hashtags\":[],\"urls\":[]," +
+                "\"user_mentions\":[],\"symbols\":[]},\"favorited\":false,\"retweeted\":false,\"lang\":\"en\"}";
+    }
+}
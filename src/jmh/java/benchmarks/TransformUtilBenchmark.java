@@ -0,0 +1,61 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import utils.TransformUtil;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of each {@link TransformUtil} function on the texts of the {@link SyntheticCorpus}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TransformUtilBenchmark {
+
+    private String[] texts;
+
+    @Setup
+    public void setUp() {
+        texts = SyntheticCorpus.get().texts();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SyntheticCorpus.SIZE)
+    public void tokenizeToList(Blackhole blackhole) {
+        for (String text : texts)
+            blackhole.consume(TransformUtil.tokenizeToList(text));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SyntheticCorpus.SIZE)
+    public void onlyAlphabetic(Blackhole blackhole) {
+        for (String text : texts)
+            blackhole.consume(TransformUtil.onlyAlphabetic(text));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SyntheticCorpus.SIZE)
+    public void clearLinks(Blackhole blackhole) {
+        for (String text : texts)
+            blackhole.consume(TransformUtil.clearLinks(text));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SyntheticCorpus.SIZE)
+    public void removeCollectionKeyword(Blackhole blackhole) {
+        for (String text : texts)
+            blackhole.consume(TransformUtil.removeCollectionKeyword(text, SyntheticCorpus.KEYWORD));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SyntheticCorpus.SIZE)
+    public void normalize(Blackhole blackhole) {
+        for (String text : texts)
+            blackhole.consume(TransformUtil.normalize(text));
+    }
+}
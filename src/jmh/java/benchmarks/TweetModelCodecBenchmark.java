@@ -0,0 +1,103 @@
+package benchmarks;
+
+import com.mongodb.MongoClient;
+import domain.TweetModel;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.pojo.PojoCodecProvider;
+import org.bson.io.BasicOutputBuffer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import repository.TweetField;
+import repository.TweetModelCodec;
+
+import java.nio.ByteBuffer;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+import static org.bson.codecs.configuration.CodecRegistries.fromProviders;
+import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
+
+/**
+ * Decode and encode throughput of {@link TweetModelCodec} compared with the automatic POJO codec
+ * previously used by the repository, on BSON documents of the tweets of the {@link SyntheticCorpus}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TweetModelCodecBenchmark {
+
+    private final Codec<TweetModel> tweetCodec = new TweetModelCodec();
+    private final Codec<TweetModel> textCodec = new TweetModelCodec(EnumSet.of(TweetField.TWEET_TEXT));
+    private final Codec<TweetModel> pojoCodec =
+            fromRegistries(MongoClient.getDefaultCodecRegistry(),
+                    fromProviders(PojoCodecProvider.builder().automatic(true).build())).get(TweetModel.class);
+
+    private TweetModel[] tweets;
+    private byte[][] documents;
+
+    @Setup
+    public void setUp() {
+        tweets = SyntheticCorpus.get().tweets();
+        documents = new byte[tweets.length][];
+        for (int i = 0; i < tweets.length; i++) {
+            // Analyzed tweets, as read by the analyses
+            tweets[i].setTransformedTweetText(tweets[i].getTweetText().toLowerCase());
+            documents[i] = encode(tweetCodec, tweets[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SyntheticCorpus.SIZE)
+    public void decodeHandWritten(Blackhole blackhole) {
+        decodeAll(tweetCodec, blackhole);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SyntheticCorpus.SIZE)
+    public void decodeHandWrittenTextOnly(Blackhole blackhole) {
+        decodeAll(textCodec, blackhole);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SyntheticCorpus.SIZE)
+    public void decodePojo(Blackhole blackhole) {
+        decodeAll(pojoCodec, blackhole);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SyntheticCorpus.SIZE)
+    public void encodeHandWritten(Blackhole blackhole) {
+        for (TweetModel tweet : tweets)
+            blackhole.consume(encode(tweetCodec, tweet));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SyntheticCorpus.SIZE)
+    public void encodePojo(Blackhole blackhole) {
+        for (TweetModel tweet : tweets)
+            blackhole.consume(encode(pojoCodec, tweet));
+    }
+
+    private void decodeAll(Codec<TweetModel> codec, Blackhole blackhole) {
+        for (byte[] document : documents) {
+            try (BsonBinaryReader reader = new BsonBinaryReader(ByteBuffer.wrap(document))) {
+                blackhole.consume(codec.decode(reader, DecoderContext.builder().build()));
+            }
+        }
+    }
+
+    private static byte[] encode(Codec<TweetModel> codec, TweetModel tweet) {
+        BasicOutputBuffer buffer = new BasicOutputBuffer(512);
+        try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            codec.encode(writer, tweet, EncoderContext.builder().build());
+        }
+        return buffer.toByteArray();
+    }
+}
@@ -0,0 +1,49 @@
+package benchmarks;
+
+import domain.TweetModelParser;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import twitter4j.Status;
+import twitter4j.TwitterException;
+import twitter4j.TwitterObjectFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link TweetModelParser#parseFrom(Status)} on the statuses of the {@link SyntheticCorpus},
+ * and of the parsing of their JSON by twitter4j which precedes it on the stream threads
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TweetModelParserBenchmark {
+
+    private String[] statusesJson;
+
+    private Status[] statuses;
+
+    @Setup
+    public void setUp() throws TwitterException {
+        statusesJson = SyntheticCorpus.get().statusesJson();
+        statuses = new Status[statusesJson.length];
+        for (int i = 0; i < statusesJson.length; i++)
+            statuses[i] = TwitterObjectFactory.createStatus(statusesJson[i]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SyntheticCorpus.SIZE)
+    public void parseFrom(Blackhole blackhole) {
+        for (Status status : statuses)
+            blackhole.consume(TweetModelParser.parseFrom(status));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SyntheticCorpus.SIZE)
+    public void createStatus(Blackhole blackhole) throws TwitterException {
+        for (String json : statusesJson)
+            blackhole.consume(TwitterObjectFactory.createStatus(json));
+    }
+}
@@ -0,0 +1,71 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import sentimentAnalysis.TweetSentimentAnalysis;
+import utils.TermCounter;
+import utils.TransformUtil;
+import utils.TweetScanner;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the tweet transformation of {@link TweetSentimentAnalysis} on the {@link SyntheticCorpus}:
+ * links and keyword removal, non alphabetic characters removal, lower casing, tokenization and stop words removal,
+ * with {@link TweetSentimentAnalysis#transformTweet(String, TweetScanner, utils.TermFrequencies)}, and with the
+ * {@link TransformUtil} regex chain its scanner replaced.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TweetTransformBenchmark {
+
+    private String[] texts;
+
+    private final TweetScanner scanner = new TweetScanner(SyntheticCorpus.KEYWORD, true);
+
+    @Setup
+    public void setUp() {
+        texts = SyntheticCorpus.get().texts();
+    }
+
+    /**
+     * Transformation of the analysis, without counting words
+     */
+    @Benchmark
+    @OperationsPerInvocation(SyntheticCorpus.SIZE)
+    public void transformTweet(Blackhole blackhole) {
+        for (String text : texts)
+            blackhole.consume(TweetSentimentAnalysis.transformTweet(text, scanner, null));
+    }
+
+    /**
+     * Transformation of the analysis, counting words in a counter of the corpus vocabulary
+     */
+    @Benchmark
+    @OperationsPerInvocation(SyntheticCorpus.SIZE)
+    public void transformTweetCountingWords(Blackhole blackhole) {
+        TermCounter counter = new TermCounter();
+        for (String text : texts)
+            blackhole.consume(TweetSentimentAnalysis.transformTweet(text, scanner, counter));
+        blackhole.consume(counter);
+    }
+
+    /**
+     * Regex chain of {@link TransformUtil} up to tokenization, which the scanner of the analysis replaced
+     */
+    @Benchmark
+    @OperationsPerInvocation(SyntheticCorpus.SIZE)
+    public void transformTweetRegex(Blackhole blackhole) {
+        for (String text : texts) {
+            String transformed = TransformUtil.clearLinks(text);
+            transformed = TransformUtil.removeCollectionKeyword(transformed, SyntheticCorpus.KEYWORD);
+            transformed = TransformUtil.onlyAlphabetic(transformed);
+            transformed = TransformUtil.normalize(transformed);
+            blackhole.consume(TransformUtil.tokenizeToList(transformed));
+        }
+    }
+}
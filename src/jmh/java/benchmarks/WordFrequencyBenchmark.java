@@ -0,0 +1,96 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import utils.SpaceSavingTermCounter;
+import utils.StripedTermCounter;
+import utils.TermCounter;
+import utils.TermFrequencies;
+import utils.TweetScanner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of word counting and of the merge of word counts, on the words of the {@link SyntheticCorpus}.
+ * Each operation counts all words of the corpus, or merges the counts of all of them.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WordFrequencyBenchmark {
+
+    /**
+     * Partial counters merged together, like the counts of several analyses or threads
+     */
+    private static final int PARTS = 4;
+
+    private char[][] words;
+
+    private TermCounter[] parts;
+
+    private TermCounter counted;
+
+    @Setup
+    public void setUp() {
+        TweetScanner scanner = new TweetScanner(SyntheticCorpus.KEYWORD, true);
+        List<char[]> corpusWords = new ArrayList<>();
+        for (String text : SyntheticCorpus.get().texts()) {
+            int tokens = scanner.scan(text);
+            for (int t = 0; t < tokens; t++)
+                corpusWords.add(scanner.getToken(t).toCharArray());
+        }
+        words = corpusWords.toArray(new char[0][]);
+
+        parts = new TermCounter[PARTS];
+        for (int p = 0; p < PARTS; p++)
+            parts[p] = new TermCounter();
+        for (int w = 0; w < words.length; w++)
+            parts[w % PARTS].add(words[w], 0, words[w].length);
+
+        counted = new TermCounter();
+        count(counted);
+    }
+
+    @Benchmark
+    public TermFrequencies countTermCounter() {
+        return count(new TermCounter());
+    }
+
+    @Benchmark
+    public TermFrequencies countStripedTermCounter() {
+        return count(new StripedTermCounter(4));
+    }
+
+    @Benchmark
+    public TermFrequencies countSpaceSaving() {
+        return count(SpaceSavingTermCounter.withMaxError(0.001));
+    }
+
+    /**
+     * Merge of the partial counters into a new one, as word counts are merged with the stored ones
+     * by incremental analyses
+     */
+    @Benchmark
+    public TermFrequencies mergeCounts() {
+        TermCounter merged = new TermCounter();
+        for (TermCounter part : parts)
+            part.forEachId(id -> merged.add(part.getTerm(id), part.getCount(id)));
+        return merged;
+    }
+
+    @Benchmark
+    public void topWords(Blackhole blackhole) {
+        blackhole.consume(counted.topIds(50, id -> true));
+    }
+
+    private TermFrequencies count(TermFrequencies counter) {
+        for (char[] word : words)
+            counter.add(word, 0, word.length);
+        return counter;
+    }
+}
@@ -1,8 +1,36 @@
 import args.*;
 import com.beust.jcommander.JCommander;
+import domain.TweetModel;
+import metrics.Metrics;
+import repository.IngestQueue;
+import repository.MongoClientRegistry;
 import repository.MongoRepository;
+import repository.PartitionCatalog;
+import repository.PartitionedRepository;
+import repository.PartitionScheme;
+import repository.TweetModelCodec;
+import sentimentAnalysis.CachingSentimentScorer;
+import sentimentAnalysis.ChartExportService;
+import sentimentAnalysis.LexiconSentimentScorer;
+import sentimentAnalysis.NearDuplicateAnalysis;
+import sentimentAnalysis.SentimentClient;
+import sentimentAnalysis.SentimentScorer;
 import sentimentAnalysis.TweetSentimentAnalysis;
 import sentimentAnalysis.UserSentimentAnalysis;
+import utils.KllSketch;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * CLASS DESCRIPTION HERE
@@ -18,6 +46,11 @@ public class Main {
             "Program to collect tweets(duhh..) based on the given hashtag and inserts it in a mongoDB with an open port.\n";
     private static final String DATABASE_NAME = "tweetsDb";
 
+    /**
+     * Collector of the collect command, stopped on exit before the clients are closed
+     */
+    private static volatile TweetsCollector runningCollector;
+
     public static void main(String[] args){
 
         /* CLI parsing */
@@ -53,28 +86,260 @@ public class Main {
 
         /* <--- End of CLI parsing */
 
+        // Repositories of the command share pooled clients, closed on exit
+        Args commandArgs = (Args) jc.getCommands().get(jc.getParsedCommand()).getObjects().get(0);
+        MongoClientRegistry.Builder registryBuilder = new MongoClientRegistry.Builder()
+                .setConnectionsPerHost(commandArgs.getMongoPoolSize())
+                .setSocketTimeoutMillis(commandArgs.getMongoSocketTimeout())
+                .setCompressors(commandArgs.getMongoCompressors());
+        if (commandArgs.isMetrics()) {
+            Metrics.enable(commandArgs.getMetricsInterval());
+            registryBuilder.addCommandListener(Metrics.commandListener());
+        }
+        MongoClientRegistry.setShared(registryBuilder.create());
+        // Shutdown hooks run concurrently, so a single hook stores the tweets still queued or buffered by the
+        // collector, e.g. on SIGINT, and only then closes the clients they are written with
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            TweetsCollector collector = runningCollector;
+            if (collector != null)
+                collector.stop();
+            MongoClientRegistry.getShared().close();
+        }, "collector-shutdown"));
+
         // Command based execution
         switch (jc.getParsedCommand()) {
             case "collect":
-                TweetsCollector.newInstance(collectArgs.getHashtag(), DATABASE_NAME, collectArgs.getMongoHost(), collectArgs.getMongoPort())
-                        .startCollecting();
-                break;
+                PartitionedRepository.Builder repositoryBuilder = new PartitionedRepository.Builder(DATABASE_NAME,
+                        collectArgs.getMongoHost(), collectArgs.getMongoPort())
+                        .setMaxCountPerPartition(collectArgs.getMaxTweets())
+                        .setScheme(parsePartitionScheme(collectArgs))
+                        .setRetentionDays(collectArgs.getRetentionDays())
+                        .setDeduplication(collectArgs.getDedupeFpp());
+                TweetsCollector collector = TweetsCollector.newInstance(collectArgs.getHashtags(), repositoryBuilder,
+                        collectArgs.getBatchSize(), collectArgs.getFlushInterval(), newQueueBuilder(collectArgs));
+                runningCollector = collector;
+                if (collectArgs.getReplayFile() != null)
+                    collector.startReplaying(newReplayer(collectArgs));
+                else
+                    collector.startCollecting();
+                // Tweets are collected by the stream threads, the collector is stopped and the clients are closed on exit
+                return;
             case "print-collection":
                 TweetsCollector.newInstance(printArgs.getHashtag(),DATABASE_NAME, printArgs.getMongoHost(), printArgs.getMongoPort())
                         .printCollection(printArgs.isShort());
                 break;
             case "tweet-analyze":
-                TweetSentimentAnalysis sa = new TweetSentimentAnalysis(MongoRepository.newInstance(sentimentAnalysisArgs.getHashtag()));
-                sa.analyze();
-                sa.printFrequents(50, sentimentAnalysisArgs.getChartsDirectory());
-                sa.printSentiment(sentimentAnalysisArgs.getChartsDirectory());
+                SentimentScorer sentimentScorer = newSentimentScorer(sentimentAnalysisArgs);
+                analyzeTweets(sentimentAnalysisArgs, sentimentScorer, analyzedCollections(sentimentAnalysisArgs));
+                sentimentScorer.shutdown();
                 break;
             case "user-analyze":
-                UserSentimentAnalysis us = new UserSentimentAnalysis(MongoRepository.newInstance(sentimentAnalysisArgs.getHashtag()));
-                us.storeUsersSentimentScore();
-                us.produceCumulativeDistributionFrequency(sentimentAnalysisArgs.getChartsDirectory());
+                analyzeUsers(sentimentAnalysisArgs, analyzedCollections(sentimentAnalysisArgs));
                 break;
         }
 
+        MongoClientRegistry.getShared().close();
+
+    }
+
+    /**
+     * Makes the sentiment analysis of the tweets of collections, the partitions of a keyword, as a single data set
+     * and saves its charts. Near-duplicates are clustered across all collections, and the word counts and sentiment
+     * totals of each collection are merged.
+     */
+    private static void analyzeTweets(SentimentAnalysisArgs args, SentimentScorer sentimentScorer, List<String> collections) {
+        if (collections.isEmpty())
+            return;
+
+        String chartsDirectory = args.getChartsDirectory();
+        ChartExportService charts = newChartExportService(args, chartsDirectory);
+        List<MongoRepository> repositories = new ArrayList<>(collections.size());
+        for (String collection : collections)
+            repositories.add(MongoRepository.newInstance(collection, DATABASE_NAME, args.getMongoHost(), args.getMongoPort()));
+
+        if (args.isNearDuplicates()) {
+            NearDuplicateAnalysis nd = new NearDuplicateAnalysis(repositories, args.getHashtags(), args.getNearDuplicateDistance());
+            nd.setChartExportService(charts);
+            nd.setIncremental(args.isIncremental());
+            nd.findClusters();
+            nd.printLargestClusters(20, chartsDirectory);
+        }
+
+        TweetSentimentAnalysis merged = null;
+        for (MongoRepository repository : repositories) {
+            if (repositories.size() > 1)
+                System.out.println("\nAnalyzing partition " + repository.getCollectionName());
+            TweetSentimentAnalysis sa = new TweetSentimentAnalysis(repository,
+                    args.getUpdateBatchSize(), sentimentScorer, args.getHashtags());
+            sa.setChartExportService(charts);
+            if (args.getHeavyHittersError() > 0)
+                sa.useHeavyHitters(args.getHeavyHittersError());
+            sa.setIncremental(args.isIncremental());
+            if (args.isNearDuplicates())
+                sa.setCountClustersOnce(args.isCountClustersOnce());
+            sa.analyze(args.getTransformThreads(), args.getScoringThreads(), args.getQueueCapacity());
+
+            if (merged == null)
+                merged = sa;
+            else
+                merged.merge(sa);
+        }
+        merged.printFrequents(50, chartsDirectory);
+        merged.printSentiment(chartsDirectory);
+        charts.shutdown();
+    }
+
+    /**
+     * Makes the users analysis of collections, the partitions of a keyword, and saves the followers-friends ratio
+     * distribution of all of them. Users sentiment scores are stored for each collection.
+     */
+    private static void analyzeUsers(SentimentAnalysisArgs args, List<String> collections) {
+        if (collections.isEmpty())
+            return;
+
+        String chartsDirectory = args.getChartsDirectory();
+        ChartExportService charts = newChartExportService(args, chartsDirectory);
+        KllSketch ratios = new KllSketch();
+        UserSentimentAnalysis us = null;
+        for (String collection : collections) {
+            us = new UserSentimentAnalysis(MongoRepository.newInstance(collection,
+                    DATABASE_NAME, args.getMongoHost(), args.getMongoPort()));
+            us.setChartExportService(charts);
+            us.storeUsersSentimentScore(args.isRebuildUsers());
+            ratios.merge(us.followersFriendsRatioSketch());
+        }
+        us.produceCumulativeDistributionFrequency(ratios, chartsDirectory);
+        charts.shutdown();
+    }
+
+    /**
+     * Returns the collections to analyze: the partitions of the keyword in the --from/--to time range if the keyword
+     * is partitioned, otherwise the collection of the keyword
+     */
+    private static List<String> analyzedCollections(SentimentAnalysisArgs args) {
+        PartitionCatalog catalog = PartitionCatalog.newInstance(args.getHashtag(), DATABASE_NAME, args.getMongoHost(), args.getMongoPort());
+        if (catalog.isEmpty()) {
+            if (args.getFrom() != null || args.getTo() != null)
+                System.out.println("Collection " + args.getHashtag() + " is not partitioned, it is analyzed as a whole");
+            return Collections.singletonList(args.getHashtag());
+        }
+
+        List<String> partitions = catalog.find(parseTime(args.getFrom()), parseTime(args.getTo()));
+        System.out.println("Analyzing " + partitions.size() + " partition(s) of " + args.getHashtag() + ": " + partitions);
+        return partitions;
+    }
+
+    /**
+     * Parses a UTC time, yyyy-MM-dd or yyyy-MM-ddTHH:mm
+     * @return the time, null if time is null
+     */
+    private static Date parseTime(String time) {
+        if (time == null)
+            return null;
+        try {
+            LocalDateTime dateTime = time.contains("T") ? LocalDateTime.parse(time) : LocalDate.parse(time).atStartOfDay();
+            return Date.from(dateTime.toInstant(ZoneOffset.UTC));
+        } catch (DateTimeParseException e) {
+            System.err.println("Unknown time " + time + ", expected yyyy-MM-dd or yyyy-MM-ddTHH:mm");
+            System.exit(1);
+            return null;
+        }
+    }
+
+    private static PartitionScheme parsePartitionScheme(CollectArgs args) {
+        try {
+            return PartitionScheme.valueOf(args.getPartition().trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown partition " + args.getPartition() + ", expected none, hour, day or month");
+            System.exit(1);
+            return PartitionScheme.NONE;
+        }
+    }
+
+    /**
+     * Creates the replayer of the recorded stream file
+     */
+    private static TweetsReplayer newReplayer(CollectArgs args) {
+        double speed = 0;
+        try {
+            speed = TweetsReplayer.parseSpeed(args.getReplaySpeed());
+        } catch (NumberFormatException e) {
+            System.err.println("Unknown replay speed " + args.getReplaySpeed() + ", expected recorded, a factor like 10x or max");
+            System.exit(1);
+        }
+        return new TweetsReplayer(Paths.get(args.getReplayFile()), speed);
+    }
+
+    /**
+     * Creates the builder of the queue between the twitter stream and the repositories
+     */
+    private static IngestQueue.Builder<TweetModel> newQueueBuilder(CollectArgs args) {
+        IngestQueue.OverflowPolicy policy = null;
+        try {
+            policy = IngestQueue.OverflowPolicy.valueOf(args.getOverflowPolicy().trim().toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown overflow policy " + args.getOverflowPolicy() + ", expected block, drop-oldest or spill");
+            System.exit(1);
+        }
+
+        return new IngestQueue.Builder<TweetModel>()
+                .setName("collector-store")
+                .setCapacity(args.getQueueCapacity())
+                .setConsumers(args.getQueueConsumers())
+                .setOverflowPolicy(policy)
+                .setSpillFile(Paths.get(args.getSpillFile()))
+                .setCodec(new TweetModelCodec());
+    }
+
+    /**
+     * Creates the service saving the charts of an analysis in chartsDirectory, in the given formats
+     */
+    private static ChartExportService newChartExportService(SentimentAnalysisArgs args, String chartsDirectory) {
+        Set<ChartExportService.Format> formats = EnumSet.noneOf(ChartExportService.Format.class);
+        for (String format : args.getChartFormats()) {
+            try {
+                formats.add(ChartExportService.Format.valueOf(format.trim().toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                System.err.println("Unknown chart format " + format + ", expected png, svg or csv");
+                System.exit(1);
+            }
+        }
+        if (formats.isEmpty())
+            formats.add(ChartExportService.Format.PNG);
+
+        return new ChartExportService(Paths.get(chartsDirectory), args.getChartThreads(), formats);
+    }
+
+    /**
+     * Creates the in-process lexicon scorer if a lexicon file is given, otherwise the cached sentiment web api client
+     */
+    private static SentimentScorer newSentimentScorer(SentimentAnalysisArgs args) {
+        if (args.getLexicon() != null) {
+            try {
+                LexiconSentimentScorer scorer = LexiconSentimentScorer.load(Paths.get(args.getLexicon()));
+                System.out.println("Loaded " + scorer.size() + " words from lexicon " + args.getLexicon());
+                return scorer;
+            } catch (IOException e) {
+                System.err.println("Could not load lexicon " + args.getLexicon() + ": " + e.getMessage());
+                System.exit(1);
+            }
+        }
+
+        SentimentClient client = new SentimentClient.Builder()
+                .setThreads(args.getScoringThreads())
+                .setConnectTimeoutMillis(args.getConnectTimeout())
+                .setReadTimeoutMillis(args.getReadTimeout())
+                .setMaxRetries(args.getMaxRetries())
+                .create();
+
+        // Cache web api results, so that identical texts cost a single request
+        String cacheFile = args.getSentimentCache();
+        try {
+            return new CachingSentimentScorer(client, args.getSentimentCacheSize(),
+                    cacheFile == null || cacheFile.isEmpty() ? null : Paths.get(cacheFile));
+        } catch (IOException e) {
+            System.err.println("Could not open sentiment cache " + cacheFile + ": " + e.getMessage());
+            return client;
+        }
     }
 }
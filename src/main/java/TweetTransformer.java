@@ -1,10 +1,9 @@
 import domain.TweetModel;
-import utils.TransformUtil;
+import utils.TweetScanner;
 
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.List;
 
 /**
  * Class performing all the necessary steps described in requirements. (3th step)
@@ -21,6 +20,9 @@ public class TweetTransformer {
                     "that", "the", "their", "then", "there", "these",
                     "they", "this", "to", "was", "will", "with"));
 
+    //Keeps links and has no keyword to remove
+    private final TweetScanner scanner = new TweetScanner(Collections.<String>emptyList(), false);
+
     public static TweetTransformer newInstance() {
         return new TweetTransformer();
     }
@@ -37,39 +39,16 @@ public class TweetTransformer {
 
         String tweetText = tweetModel.getTweetText();
 
-        System.out.println("Transforming text: " + tweetText);
-
-        System.out.println("Transforming to only alphabetic: ");
-
-        //First remove all the non-alphabetic symbols. Better as a first step
-        tweetText = TransformUtil.onlyAlphabetic(tweetText);
-
-        System.out.println(tweetText);
-
-        System.out.println("Normalizing: ");
-        //Normalize the text (toLowerCase)
-        tweetText = TransformUtil.normalize(tweetText);
-
-        System.out.println(tweetText);
-
-        //Remove all stop words
-        List<String> tokenizedTweet = TransformUtil.tokenizeToList(tweetText);
-        List<String> tweetWithoutStopWords = new ArrayList<>();
-
-        for (String word: tokenizedTweet) {
-            System.out.println("Checking if " + word + " is stop word");
-
-            if ( !isStopWord(word) ) {
-                System.out.println("Not a stop word, keeping");
-                tweetWithoutStopWords.add(word);
-            }
-        }
+        //Remove all the non-alphabetic symbols, normalize the text (toLowerCase) and tokenize in one pass
+        int tokens = scanner.scan(tweetText);
 
-        //Create the updated tweet
-        StringBuilder temp = new StringBuilder();
+        //Remove all stop words and create the updated tweet
+        StringBuilder temp = new StringBuilder(tweetText.length());
 
-        for (String word : tweetWithoutStopWords){
-            temp.append(word).append(" ");
+        for (int i = 0; i < tokens; i++) {
+            String word = scanner.getToken(i);
+            if ( !isStopWord(word) )
+                temp.append(word).append(" ");
         }
 
         //Update the tweet model
@@ -1,17 +1,99 @@
+import domain.TweetModel;
 import domain.TweetModelParser;
+import metrics.Metrics;
+import metrics.Stage;
+import repository.IngestQueue;
 import repository.MaxCountReachedException;
-import repository.MongoRepository;
+import repository.PartitionedRepository;
 import twitter.Constants;
 import twitter4j.*;
 import twitter4j.conf.ConfigurationBuilder;
+import utils.AhoCorasick;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class TweetsCollector implements StatusListener {
 
+    /**
+     * Notified of each tweet on its way to the repositories, e.g. to measure ingest latency
+     */
+    interface IngestListener {
+
+        /**
+         * Called by the stream thread before an accepted tweet is queued
+         */
+        void accepted(TweetModel tweet);
+
+        /**
+         * Called once the insert of the tweet has completed, by the thread which inserted it: a consumer thread,
+         * or the thread which flushed its batch with write-behind. Called for each collection the tweet is inserted in.
+         */
+        void stored(TweetModel tweet);
+
+        /**
+         * Called by a consumer thread when the tweet is not stored, because it contains none of the keywords
+         * or their collections are full
+         */
+        void discarded(TweetModel tweet);
+    }
+
     private static final int MAX_TWEETS_PER_COLLECTION = 1500;
 
+    /**
+     * The progress line counts the items of each collection, which can cost a round-trip per keyword,
+     * so it is printed at most once per interval rather than for each stored tweet
+     */
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
     private final TwitterStream streamInstance;
-    private final MongoRepository repository;
-    private final String collectionName;
+
+    /**
+     * Tracked keywords and the repository of each keyword, in the same order
+     */
+    private final List<String> keywords;
+    private final List<PartitionedRepository> repositories;
+
+    /**
+     * Finds the tracked keywords contained in a tweet, ignoring case like the stream filter does
+     */
+    private final AhoCorasick router;
+
+    /**
+     * Keywords found in the tweet stored by each consumer thread, and keywords whose collection is full
+     */
+    private final ThreadLocal<boolean[]> matchedKeywords;
+    private final boolean[] fullCollections;
+    private int fullCollectionsCount = 0;
+
+    /**
+     * Accepted tweets wait in the queue until a consumer thread stores them, so that the stream thread
+     * never waits for the database
+     */
+    private IngestQueue.Builder<TweetModel> queueBuilder;
+    private IngestQueue<TweetModel> queue;
+
+    private final AtomicBoolean exiting = new AtomicBoolean(false);
+
+    private final AtomicLong nextProgressNanos = new AtomicLong(System.nanoTime());
+
+    /**
+     * Held while draining, which waits for the consumer threads, so it cannot be the monitor of the collector
+     * they synchronize on
+     */
+    private final Object drainLock = new Object();
+
+    /**
+     * Set when statuses come from a replayed file, which exits once replayed, instead of the stream
+     */
+    private boolean replaying = false;
+    private IngestListener ingestListener;
 
     /**
      * Creates a new instance of the collector. Currently you cannot
@@ -25,13 +107,65 @@ public class TweetsCollector implements StatusListener {
                                        String mongoDBHost,
                                        int mongoDBPort){
 
-        return new TweetsCollector(collectionName,databaseName,mongoDBHost,mongoDBPort);
+        return new TweetsCollector(Collections.singletonList(collectionName),
+                new PartitionedRepository.Builder(databaseName,mongoDBHost,mongoDBPort).setMaxCountPerPartition(MAX_TWEETS_PER_COLLECTION));
+    }
+
+    /**
+     * Creates a new instance of the collector which buffers the collected tweets and inserts them in batches.
+     * @param batchSize tweets buffered before a bulk insert, 1 to insert each tweet immediately
+     * @param flushIntervalMillis max time a buffered tweet waits before it is inserted
+     */
+    static TweetsCollector newInstance(String collectionName,
+                                       String databaseName,
+                                       String mongoDBHost,
+                                       int mongoDBPort,
+                                       int batchSize,
+                                       long flushIntervalMillis){
+
+        return newInstance(Collections.singletonList(collectionName),databaseName,mongoDBHost,mongoDBPort,batchSize,flushIntervalMillis);
     }
 
-    private TweetsCollector(String collectionName,
-                            String databaseName,
-                            String mongoDBHost,
-                            int mongoDBPort){
+    /**
+     * Creates a new instance of the collector which tracks several keywords with a single stream.
+     * Each keyword is stored in its own collection, named after the keyword. A tweet is stored in the
+     * collection of every keyword it contains.
+     * @param batchSize tweets buffered before a bulk insert, 1 to insert each tweet immediately
+     * @param flushIntervalMillis max time a buffered tweet waits before it is inserted
+     */
+    static TweetsCollector newInstance(List<String> keywords,
+                                       String databaseName,
+                                       String mongoDBHost,
+                                       int mongoDBPort,
+                                       int batchSize,
+                                       long flushIntervalMillis){
+
+        return newInstance(keywords,
+                new PartitionedRepository.Builder(databaseName,mongoDBHost,mongoDBPort).setMaxCountPerPartition(MAX_TWEETS_PER_COLLECTION),
+                batchSize,flushIntervalMillis,new IngestQueue.Builder<TweetModel>().setName("collector-store"));
+    }
+
+    /**
+     * Creates a new instance of the collector which tracks several keywords with a single stream, and hands the
+     * accepted tweets to the repositories through a queue.
+     * @param repositoryBuilder database, max count, partitioning and duplicate suppression of the repository of
+     *                          each keyword. With no partitioning, the collector exits when all collections are full
+     * @param queueBuilder capacity, consumer threads and overflow policy of the queue
+     */
+    static TweetsCollector newInstance(List<String> keywords,
+                                       PartitionedRepository.Builder repositoryBuilder,
+                                       int batchSize,
+                                       long flushIntervalMillis,
+                                       IngestQueue.Builder<TweetModel> queueBuilder){
+
+        TweetsCollector collector = new TweetsCollector(keywords,repositoryBuilder);
+        collector.queueBuilder = queueBuilder;
+        collector.repositories.forEach(repository -> repository.enableWriteBehind(batchSize, flushIntervalMillis));
+        return collector;
+    }
+
+    private TweetsCollector(List<String> keywords,
+                            PartitionedRepository.Builder repositoryBuilder){
 
         //If we use a default configuration, let's set it up here
 
@@ -44,42 +178,114 @@ public class TweetsCollector implements StatusListener {
 
         streamInstance = new TwitterStreamFactory(builder.build()).getInstance();
 
-        //Initialize the repository on the local host.
-        this.repository = MongoRepository.newInstance(collectionName,databaseName,mongoDBHost,mongoDBPort,MAX_TWEETS_PER_COLLECTION);
+        //Initialize the repositories on the local host, all of them share one client.
+        this.repositories = new ArrayList<>(keywords.size());
+        for (String keyword : keywords)
+            this.repositories.add(repositoryBuilder.create(keyword));
 
-        this.collectionName = collectionName;
+        this.keywords = keywords;
+        this.router = new AhoCorasick(keywords, true);
+        this.matchedKeywords = ThreadLocal.withInitial(() -> new boolean[keywords.size()]);
+        this.fullCollections = new boolean[keywords.size()];
     }
 
 
 
     /**
-     * Opens the twitter stream and filters on the given keyword.
+     * Opens the twitter stream and filters on the given keywords.
      * While open, each time a new tweet arrives in the stream, it will be
      * saved in the database configured by the other parameters.
      */
     public void startCollecting(){
 
+        if (!openQueue())
+            return;
+
         streamInstance.addListener(this);
 
         System.out.println("Starting listening for tweets...");
 
-        streamInstance.filter(collectionName);
+        streamInstance.filter(keywords.toArray(new String[0]));
+
+    }
+
+    /**
+     * Feeds the statuses of a recorded stream to the collector, instead of the twitter stream, and exits
+     * once they have all been stored or the collections are full. Prints the throughput and latency of the replay.
+     */
+    public void startReplaying(TweetsReplayer replayer){
+
+        this.replaying = true;
+        this.ingestListener = replayer;
+        this.repositories.forEach(repository -> repository.setInsertListener(replayer::stored));
+        if (!openQueue())
+            return;
+
+        System.out.println("Replaying tweets...");
+
+        try {
+            replayer.replay(this, exiting::get);
+        } catch (IOException e) {
+            System.err.println("Could not read the replayed file: " + e.getMessage());
+        }
+
+        // The end time is taken once the buffered tweets have been inserted too
+        drain();
+        replayer.printReport(System.nanoTime());
+        closeConnectionsAndExit();
+    }
 
+    /**
+     * Creates the queue between onStatus and the repositories and starts its consumers
+     * @return false if the queue could not be created
+     */
+    private boolean openQueue(){
+        try {
+            queue = queueBuilder.create(this::storeTweet);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Could not create the spill file: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Stores the queued tweets, then flushes any buffered tweets. Closing the queue again waits for nothing,
+     * and flushing an empty buffer does nothing, so it may be called more than once.
+     */
+    private void drain(){
+        synchronized (drainLock) {
+            if (queue != null)
+                queue.close();
+            this.repositories.forEach(PartitionedRepository::disconnect);
+        }
+    }
+
+    /**
+     * Stops listening to the stream and stores the queued and buffered tweets, without exiting.
+     * Called on exit, e.g. on SIGINT, before the clients of the repositories are closed.
+     */
+    void stop(){
+        exiting.set(true);
+        streamInstance.removeListener(this);
+        drain();
     }
 
     private void closeConnectionsAndExit(){
         streamInstance.removeListener(this);
-        this.repository.disconnect();
+        drain();
+        System.out.println("\nStored " + queue.getConsumed() + " of " + queue.getOffered() + " accepted tweets, "
+                + duplicateCount() + " duplicates rejected, " + queue.report());
         System.exit(0);
     }
 
     /**
-     * Prints the collection you defined when initiating the collector.
+     * Prints the collection of the first keyword you defined when initiating the collector.
      *
      * @param s: short printing
      */
     void printCollection(boolean s){
-        this.repository.printCollection(s);
+        this.repositories.get(0).printCollection(s);
     }
 
 
@@ -94,8 +300,115 @@ public class TweetsCollector implements StatusListener {
                 !status.isRetweet());
     }
 
+    /**
+     * Marks in matched the keywords contained in the tweet text.
+     * The stream also matches keywords in urls and mentions, so a tweet which contains none of them in
+     * its text is kept when a single keyword is tracked.
+     * @return true if the tweet should be stored in at least one collection
+     */
+    private boolean routeTweet(TweetModel tweet, boolean[] matched){
+        Arrays.fill(matched, false);
+
+        if (keywords.size() == 1) {
+            matched[0] = true;
+            return true;
+        }
+
+        return router.findAll(tweet.getTweetText(), matched) > 0;
+    }
+
+    /**
+     * Stores a tweet in the repositories of the keywords it contains. Called by the consumer threads of the queue.
+     */
+    private void storeTweet(TweetModel tweet){
+        if (!routeAndStoreTweet(tweet) && ingestListener != null)
+            ingestListener.discarded(tweet);
+    }
+
+    /**
+     * @return false if the tweet was added to no repository
+     */
+    private boolean routeAndStoreTweet(TweetModel tweet){
+        boolean[] matched = matchedKeywords.get();
+        if (!routeTweet(tweet, matched))
+            return false;
+
+        boolean added = false;
+        for (int i = 0; i < keywords.size(); i++) {
+            if (!matched[i] || isFull(i))
+                continue;
+
+            PartitionedRepository repository = repositories.get(i);
+            try {
+                repository.addItem(tweet);
+                added = true;
+            } catch (MaxCountReachedException e) {
+                if (markFull(i)) {
+                    System.out.println("\nMax count of collection " + repository.getCollectionName() + " reached: " + repository.getMaxCollectionCount());
+
+                    if (allFull() && exiting.compareAndSet(false, true)) {
+                        System.out.println("Thank you for the collection, exiting...");
+                        // The queue is drained before exiting, which waits for this consumer thread.
+                        // A replay stops on its own and exits from its thread.
+                        if (!replaying)
+                            new Thread(this::closeConnectionsAndExit, "collector-exit").start();
+                    }
+                }
+            }
+        }
+
+        printProgress();
+        return added;
+    }
+
+    private synchronized boolean isFull(int keyword){
+        return fullCollections[keyword];
+    }
+
+    /**
+     * Marks the collection of keyword as full
+     * @return false if it was already marked by another consumer thread
+     */
+    private synchronized boolean markFull(int keyword){
+        if (fullCollections[keyword])
+            return false;
+        fullCollections[keyword] = true;
+        fullCollectionsCount++;
+        return true;
+    }
+
+    private synchronized boolean allFull(){
+        return fullCollectionsCount == keywords.size();
+    }
+
+    /**
+     * Prints the items count of each collection and the state of the queue, unless it was printed
+     * less than an interval ago. Only the consumer thread which claims the interval prints it.
+     */
+    private void printProgress(){
+        long now = System.nanoTime();
+        long next = nextProgressNanos.get();
+        if (now - next < 0 || !nextProgressNanos.compareAndSet(next, now + PROGRESS_INTERVAL_NANOS))
+            return;
+
+        StringBuilder progress = new StringBuilder("\rCollected");
+        for (PartitionedRepository repository : repositories)
+            progress.append(String.format(" %s: %d/%d", repository.getCollectionName(),
+                    repository.getCollectionCount(), repository.getMaxCollectionCount()));
+        progress.append(", ").append(duplicateCount()).append(" duplicates, ").append(queue.report());
+        System.out.print(progress);
+    }
+
+    private long duplicateCount(){
+        long duplicates = 0;
+        for (PartitionedRepository repository : repositories)
+            duplicates += repository.getDuplicateCount();
+        return duplicates;
+    }
+
     /**
      * Callback method fired from the stream instance each time a new tweet arrives on the stream.
+     * The accepted tweet is only queued, it is stored by the consumer threads of the queue.
      * @param status
      */
     @Override
@@ -104,31 +417,26 @@ public class TweetsCollector implements StatusListener {
         //DEBUG
         //System.out.println("Tweet received");
 
+        if (exiting.get())
+            return;
+
         //First we must check that the tweet contained is in the English language
         if (tweetAccepted(status)){
 
-            //DEBUG
-            //System.out.println("Tweet accepted. Parsing and saving to repository...");
-
-            //If so, we should parse it the to local tweet model first and then save it immediately in the repository
-            try {
-                this.repository.addItem(
-                        TweetModelParser.parseFrom(status)
-                );
-                System.out.printf("\rCollected %d/%d items", repository.getCollectionCount(), repository.getMaxCollectionCount());
-            } catch (MaxCountReachedException e) {
-                System.out.println("Max count of collection reached: " + MAX_TWEETS_PER_COLLECTION);
-                System.out.println("Thank you for the collection, exiting...");
-                this.closeConnectionsAndExit();
-            }
+            //If so, we should parse it the to local tweet model first and then queue it for the repositories
+            //of the keywords it contains
+            long start = Metrics.start();
+            TweetModel tweet = TweetModelParser.parseFrom(status);
+            Metrics.stop(Stage.INGEST_PARSE, start);
+            if (ingestListener != null)
+                ingestListener.accepted(tweet);
+            queue.put(tweet);
         }
         else {
             //DEBUG
             //System.out.println("Tweet rejected");
         }
 
-
-
     }
 
     @Override
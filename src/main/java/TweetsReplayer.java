@@ -0,0 +1,224 @@
+import domain.TweetModel;
+import twitter4j.Status;
+import twitter4j.StatusListener;
+import twitter4j.TwitterException;
+import twitter4j.TwitterObjectFactory;
+import utils.KllSketch;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Feeds statuses recorded from the twitter stream, one JSON status per line of a plain or gzip file, to a
+ * {@link StatusListener}, so that the ingest path can be load tested offline.
+ * Statuses are replayed with their recorded timing, a number of times faster, or as fast as possible.
+ *
+ * Measures the time the listener takes to return from onStatus, which is the time the stream thread is
+ * blocked, and the time from onStatus until the insert of each tweet has completed, including the time it
+ * waits in a write-behind buffer, reported as percentiles along with the sustained throughput.
+ */
+public class TweetsReplayer implements TweetsCollector.IngestListener {
+
+    private static final String TIMESTAMP_FIELD = "\"timestamp_ms\":\"";
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final Path file;
+
+    /**
+     * Speed factor of the recorded timing, 0 to replay as fast as possible
+     */
+    private final double speed;
+
+    /**
+     * Time each accepted tweet was given to the listener, until it is stored or discarded.
+     * Duplicates rejected by the repositories are never stored and stay in the map.
+     */
+    private final Map<Long, Long> acceptedNanos = new ConcurrentHashMap<>();
+    private final AtomicLong stored = new AtomicLong();
+
+    private final KllSketch onStatusMicros = new KllSketch();
+    private final KllSketch storeMillis = new KllSketch();
+
+    private long replayed = 0;
+    private long skipped = 0;
+    private long maxLagNanos = 0;
+    private long startNanos;
+    private long endNanos;
+
+    /**
+     * @param speed speed factor of the recorded timing, e.g. 1 for the recorded timing, 10 for 10 times faster,
+     *              0 to replay as fast as possible
+     */
+    public TweetsReplayer(Path file, double speed) {
+        this.file = file;
+        this.speed = Math.max(0, speed);
+    }
+
+    /**
+     * Parses a replay speed: "recorded", "max" or a speed factor such as "10x"
+     * @return the speed factor, 0 for "max"
+     */
+    public static double parseSpeed(String speed) {
+        String s = speed.trim().toLowerCase();
+        if (s.equals("recorded"))
+            return 1;
+        if (s.equals("max"))
+            return 0;
+        if (s.endsWith("x"))
+            s = s.substring(0, s.length() - 1);
+
+        double factor = Double.parseDouble(s);
+        if (factor <= 0)
+            throw new NumberFormatException("Replay speed must be positive, was " + speed);
+        return factor;
+    }
+
+    /**
+     * Replays the statuses of the file to listener, on the calling thread
+     * @param stopped tells whether the listener wants no more statuses, e.g. because its collections are full
+     * @throws IOException if the file cannot be read
+     */
+    public void replay(StatusListener listener, BooleanSupplier stopped) throws IOException {
+        long firstTimestamp = -1;
+        startNanos = System.nanoTime();
+
+        try (BufferedReader reader = newReader()) {
+            String line;
+            while ((line = reader.readLine()) != null && !stopped.getAsBoolean()) {
+                if (line.isEmpty())
+                    continue;
+
+                Status status;
+                try {
+                    status = TwitterObjectFactory.createStatus(line);
+                } catch (TwitterException e) {
+                    // Deletion notices, limit notices and broken lines
+                    skipped++;
+                    continue;
+                }
+
+                // Waits until the recorded time of the status, relative to the first one
+                if (speed > 0) {
+                    long timestamp = timestampOf(line, status);
+                    if (firstTimestamp < 0)
+                        firstTimestamp = timestamp;
+                    long due = startNanos + (long) (TimeUnit.MILLISECONDS.toNanos(timestamp - firstTimestamp) / speed);
+                    long wait = due - System.nanoTime();
+                    if (wait > 0)
+                        LockSupport.parkNanos(wait);
+                    else
+                        maxLagNanos = Math.max(maxLagNanos, -wait);
+                }
+
+                long before = System.nanoTime();
+                listener.onStatus(status);
+                onStatusMicros.update((System.nanoTime() - before) / 1e3);
+                replayed++;
+            }
+        }
+
+        endNanos = System.nanoTime();
+    }
+
+    @Override
+    public void accepted(TweetModel tweet) {
+        acceptedNanos.put(tweet.getTweetID(), System.nanoTime());
+    }
+
+    /**
+     * Records the store latency of tweet, the first time it is inserted in a collection
+     */
+    @Override
+    public void stored(TweetModel tweet) {
+        Long accepted = acceptedNanos.remove(tweet.getTweetID());
+        if (accepted == null)
+            return;
+
+        stored.incrementAndGet();
+        double millis = (System.nanoTime() - accepted) / 1e6;
+        synchronized (storeMillis) {
+            storeMillis.update(millis);
+        }
+    }
+
+    @Override
+    public void discarded(TweetModel tweet) {
+        acceptedNanos.remove(tweet.getTweetID());
+    }
+
+    /**
+     * Prints replay throughput and latency percentiles
+     * @param drainedNanos time at which every queued and buffered tweet had been inserted
+     */
+    public void printReport(long drainedNanos) {
+        long stored = this.stored.get();
+        double replaySeconds = Math.max(1, endNanos - startNanos) / 1e9;
+        double totalSeconds = Math.max(1, drainedNanos - startNanos) / 1e9;
+
+        System.out.printf("\nReplayed %d statuses of %s in %.1f s (%d lines skipped), %.1f statuses/s\n",
+                replayed, file, replaySeconds, skipped, replayed / replaySeconds);
+        System.out.printf("Stored %d tweets in %.1f s, %.1f tweets/s sustained\n",
+                stored, totalSeconds, stored / totalSeconds);
+        if (speed > 0)
+            System.out.printf("Max lag behind the recorded timing: %.1f ms\n", maxLagNanos / 1e6);
+
+        printPercentiles("onStatus latency (us)", onStatusMicros);
+        synchronized (storeMillis) {
+            printPercentiles("Store latency (ms)", storeMillis);
+        }
+    }
+
+    private static void printPercentiles(String title, KllSketch sketch) {
+        if (sketch.isEmpty())
+            return;
+
+        double[] values = sketch.getQuantiles(PERCENTILES);
+        StringBuilder line = new StringBuilder(String.format("%-24s", title));
+        for (int i = 0; i < PERCENTILES.length; i++)
+            line.append(String.format(" p%s %.1f", format(PERCENTILES[i] * 100), values[i]));
+        line.append(String.format(" max %.1f", sketch.getMax()));
+        System.out.println(line);
+    }
+
+    private static String format(double percentile) {
+        return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+    }
+
+    /**
+     * Returns the recorded time of status in milliseconds, from the timestamp_ms field of the stream if present,
+     * otherwise from its creation date
+     */
+    private static long timestampOf(String json, Status status) {
+        int at = json.indexOf(TIMESTAMP_FIELD);
+        if (at >= 0) {
+            int start = at + TIMESTAMP_FIELD.length();
+            int end = json.indexOf('"', start);
+            try {
+                return Long.parseLong(json.substring(start, end));
+            } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+                // Falls back to the creation date
+            }
+        }
+        return status.getCreatedAt() == null ? 0 : status.getCreatedAt().getTime();
+    }
+
+    private BufferedReader newReader() throws IOException {
+        InputStream in = Files.newInputStream(file);
+        if (file.getFileName().toString().endsWith(".gz"))
+            in = new GZIPInputStream(in, 1 << 16);
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+    }
+}
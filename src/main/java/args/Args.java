@@ -2,6 +2,9 @@ package args;
 
 import com.beust.jcommander.Parameter;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Base Class for commands arguments Classes
  */
@@ -16,11 +19,33 @@ public class Args {
     @Parameter(names = {"-p", "--mongoPort"}, description = "MongoDB Port")
     private int mongoPort = 27017;
 
-    @Parameter(required = true, description = "<search keyword>")
-    private String hashtag;
+    @Parameter(names = {"--mongo-pool-size"}, description = "Max connections of the MongoDB connection pool")
+    private int mongoPoolSize = 100;
+
+    @Parameter(names = {"--mongo-socket-timeout"}, description = "MongoDB socket read timeout in milliseconds, 0 for no timeout")
+    private int mongoSocketTimeout = 0;
+
+    @Parameter(names = {"--mongo-compressors"}, description = "MongoDB wire compressors in order of preference (snappy, zlib), empty for none")
+    private List<String> mongoCompressors = Collections.singletonList("zlib");
+
+    @Parameter(names = {"--metrics"}, description = "Times the ingest and analysis stages and the MongoDB commands, exposed over JMX and logged periodically")
+    private boolean metrics = false;
+
+    @Parameter(names = {"--metrics-interval"}, description = "Seconds between logged metrics, 0 to log them only on exit")
+    private long metricsInterval = 10;
 
+    @Parameter(required = true, description = "<search keyword> [<search keyword>...]")
+    private List<String> hashtags;
+
+    /**
+     * Returns the first search keyword
+     */
     public String getHashtag() {
-        return hashtag;
+        return hashtags.get(0);
+    }
+
+    public List<String> getHashtags() {
+        return hashtags;
     }
 
     public boolean wantsHelp() {
@@ -34,4 +59,24 @@ public class Args {
     public int getMongoPort() {
         return mongoPort;
     }
+
+    public int getMongoPoolSize() {
+        return mongoPoolSize;
+    }
+
+    public int getMongoSocketTimeout() {
+        return mongoSocketTimeout;
+    }
+
+    public List<String> getMongoCompressors() {
+        return mongoCompressors;
+    }
+
+    public boolean isMetrics() {
+        return metrics;
+    }
+
+    public long getMetricsInterval() {
+        return metricsInterval;
+    }
 }
@@ -1,5 +1,6 @@
 package args;
 
+import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
 
 /**
@@ -8,5 +9,87 @@ import com.beust.jcommander.Parameters;
 @Parameters(commandDescription = "Collects tweets and stores them in a mongoDB collection")
 public class CollectArgs extends Args {
 
+    @Parameter(names = {"-b", "--batch-size"}, description = "Tweets buffered before a bulk insert. 1 inserts each tweet immediately")
+    private int batchSize = 100;
 
+    @Parameter(names = {"-f", "--flush-interval"}, description = "Max milliseconds a buffered tweet waits before it is inserted")
+    private long flushInterval = 1000;
+
+    @Parameter(names = {"--queue-capacity"}, description = "Tweets waiting between the stream and the database")
+    private int queueCapacity = 1024;
+
+    @Parameter(names = {"--queue-consumers"}, description = "Threads storing the queued tweets")
+    private int queueConsumers = 1;
+
+    @Parameter(names = {"--overflow-policy"}, description = "What happens to a tweet when the queue is full: block, drop-oldest or spill")
+    private String overflowPolicy = "block";
+
+    @Parameter(names = {"--spill-file"}, description = "File of the tweets which did not fit in the queue, with the spill policy")
+    private String spillFile = "tweets.spill";
+
+    @Parameter(names = {"-m", "--max-tweets"}, description = "Max tweets stored in each collection")
+    private int maxTweets = 1500;
+
+    @Parameter(names = {"--replay"}, description = "File of recorded statuses, one JSON status per line, plain or gzip (.gz), replayed instead of the twitter stream")
+    private String replayFile;
+
+    @Parameter(names = {"--replay-speed"}, description = "Replay speed: recorded, a speed factor of the recorded timing (e.g. 10x) or max")
+    private String replaySpeed = "recorded";
+
+    @Parameter(names = {"--partition"}, description = "Time buckets of the partitions of each keyword: none, hour, day or month. With partitions, full partitions roll over instead of stopping the collection")
+    private String partition = "none";
+
+    @Parameter(names = {"--retention-days"}, description = "Days partitions are kept after their time bucket ended, 0 to keep them all")
+    private int retentionDays = 0;
+
+    @Parameter(names = {"--dedupe-fpp"}, description = "False positive probability of the filter of stored tweetIDs which rejects duplicate tweets, 0 to store duplicates")
+    private double dedupeFpp = 0.001;
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public int getQueueConsumers() {
+        return queueConsumers;
+    }
+
+    public String getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public String getSpillFile() {
+        return spillFile;
+    }
+
+    public int getMaxTweets() {
+        return maxTweets;
+    }
+
+    public String getReplayFile() {
+        return replayFile;
+    }
+
+    public String getReplaySpeed() {
+        return replaySpeed;
+    }
+
+    public String getPartition() {
+        return partition;
+    }
+
+    public int getRetentionDays() {
+        return retentionDays;
+    }
+
+    public double getDedupeFpp() {
+        return dedupeFpp;
+    }
 }
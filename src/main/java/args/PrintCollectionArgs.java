@@ -7,7 +7,7 @@ import com.beust.jcommander.Parameters;
  * 'print-collect' command arguments
  */
 @Parameters(commandDescription = "Prints entries of a mongoDB collection")
-public class PrintCollectionArgs extends CollectArgs {
+public class PrintCollectionArgs extends Args {
 
     @Parameter(names = {"-s", "--short"}, description = "Short printing")
     private boolean s = false;
@@ -3,6 +3,9 @@ package args;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * 'tweet-analyze' command arguments
  */
@@ -12,7 +15,147 @@ public class SentimentAnalysisArgs extends Args {
     @Parameter(names = {"-d", "--charts-directory"}, description = "Directory that charts will be stored.")
     private String chartsDirectory = ".";
 
+    @Parameter(names = {"-u", "--update-batch-size"}, description = "Analyzed tweets written back to the collection with a single bulk write")
+    private int updateBatchSize = 500;
+
+    @Parameter(names = {"-t", "--scoring-threads"}, description = "Concurrent requests to the sentiment web api, and threads of the scoring stage")
+    private int scoringThreads = 4;
+
+    @Parameter(names = {"--connect-timeout"}, description = "Connect timeout of sentiment web api requests in milliseconds")
+    private int connectTimeout = 5000;
+
+    @Parameter(names = {"--read-timeout"}, description = "Read timeout of sentiment web api requests in milliseconds")
+    private int readTimeout = 10000;
+
+    @Parameter(names = {"--max-retries"}, description = "Retries of a failed sentiment web api request, with exponential backoff")
+    private int maxRetries = 3;
+
+    @Parameter(names = {"-l", "--lexicon"}, description = "Word valence lexicon file (e.g. AFINN). When given, tweets are scored in process instead of by the sentiment web api")
+    private String lexicon;
+
+    @Parameter(names = {"--sentiment-cache"}, description = "File of the on-disk sentiment web api results cache. Empty for an in-memory only cache")
+    private String sentimentCache = "sentiment.cache";
+
+    @Parameter(names = {"--sentiment-cache-size"}, description = "Sentiment web api results kept in memory")
+    private int sentimentCacheSize = 100000;
+
+    @Parameter(names = {"-e", "--heavy-hitters-error"}, description = "Count words approximately in fixed memory, with this max error as a fraction of all words (e.g. 0.001). 0 counts exactly")
+    private double heavyHittersError = 0;
+
+    @Parameter(names = {"--transform-threads"}, description = "Threads transforming tweets and counting words")
+    private int transformThreads = Runtime.getRuntime().availableProcessors();
+
+    @Parameter(names = {"--queue-capacity"}, description = "Tweets waiting between two analysis stages")
+    private int queueCapacity = 1000;
+
+    @Parameter(names = {"-i", "--incremental"}, description = "Analyze only the tweets collected or left unlabeled since the previous incremental analysis")
+    private boolean incremental = false;
+
+    @Parameter(names = {"-r", "--rebuild-users"}, description = "Rebuild the users sentiment collection instead of updating the users with new or analyzed tweets")
+    private boolean rebuildUsers = false;
+
+    @Parameter(names = {"--chart-formats"}, description = "Formats of the saved charts: png, svg, csv")
+    private List<String> chartFormats = Collections.singletonList("png");
+
+    @Parameter(names = {"--chart-threads"}, description = "Charts rendered at the same time")
+    private int chartThreads = Runtime.getRuntime().availableProcessors();
+
+    @Parameter(names = {"--from"}, description = "Analyze only the partitions of the keyword from this UTC time, yyyy-MM-dd or yyyy-MM-ddTHH:mm")
+    private String from;
+
+    @Parameter(names = {"--to"}, description = "Analyze only the partitions of the keyword until this UTC time, yyyy-MM-dd or yyyy-MM-ddTHH:mm")
+    private String to;
+
+    @Parameter(names = {"-n", "--near-duplicates"}, description = "Find clusters of near-duplicate tweets with SimHash fingerprints and report the largest ones")
+    private boolean nearDuplicates = false;
+
+    @Parameter(names = {"--near-duplicate-distance"}, description = "Max differing bits, out of 64, of the fingerprints of near-duplicate tweets, 0 to 6")
+    private int nearDuplicateDistance = 3;
+
+    @Parameter(names = {"--count-clusters-once"}, description = "Count and score each cluster of near-duplicate tweets once, with its first tweet. Implies --near-duplicates")
+    private boolean countClustersOnce = false;
+
     public String getChartsDirectory() {
         return chartsDirectory;
     }
+
+    public int getUpdateBatchSize() {
+        return updateBatchSize;
+    }
+
+    public int getScoringThreads() {
+        return scoringThreads;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public String getLexicon() {
+        return lexicon;
+    }
+
+    public String getSentimentCache() {
+        return sentimentCache;
+    }
+
+    public int getSentimentCacheSize() {
+        return sentimentCacheSize;
+    }
+
+    public double getHeavyHittersError() {
+        return heavyHittersError;
+    }
+
+    public int getTransformThreads() {
+        return transformThreads;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public boolean isRebuildUsers() {
+        return rebuildUsers;
+    }
+
+    public List<String> getChartFormats() {
+        return chartFormats;
+    }
+
+    public int getChartThreads() {
+        return chartThreads;
+    }
+
+    public String getFrom() {
+        return from;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public boolean isNearDuplicates() {
+        return nearDuplicates || countClustersOnce;
+    }
+
+    public int getNearDuplicateDistance() {
+        return nearDuplicateDistance;
+    }
+
+    public boolean isCountClustersOnce() {
+        return countClustersOnce;
+    }
 }
@@ -31,6 +31,12 @@ public class TweetModel {
 
         private double neutralProbability;
 
+        private long clusterID;
+
+        private boolean wordsCounted;
+
+        private long fingerprint;
+
         public Builder setTweetID(long tweetID){
             this.tweetID = tweetID;
             return this;
@@ -81,6 +87,21 @@ public class TweetModel {
             return this;
         }
 
+        public Builder setClusterID(long clusterID){
+            this.clusterID = clusterID;
+            return this;
+        }
+
+        public Builder setWordsCounted(boolean wordsCounted){
+            this.wordsCounted = wordsCounted;
+            return this;
+        }
+
+        public Builder setFingerprint(long fingerprint){
+            this.fingerprint = fingerprint;
+            return this;
+        }
+
         public TweetModel create(){
             return new TweetModel(this);
         }
@@ -110,6 +131,21 @@ public class TweetModel {
 
     private double neutralProbability;
 
+    /**
+     * TweetID of the first tweet of the near-duplicate cluster of this tweet, 0 if it has no near-duplicates
+     */
+    private long clusterID;
+
+    /**
+     * Whether the words of this tweet are in the stored word counts of incremental analyses
+     */
+    private boolean wordsCounted;
+
+    /**
+     * SimHash fingerprint of the words of this tweet stored by near-duplicate analyses, 0 if it has none
+     */
+    private long fingerprint;
+
     /**
      * Empty constructor needed for MongoDB parse
      */
@@ -127,6 +163,9 @@ public class TweetModel {
         this.positiveProbability = builder.positiveProbability;
         this.negativeProbability = builder.negativeProbability;
         this.neutralProbability = builder.neutralProbability;
+        this.clusterID = builder.clusterID;
+        this.wordsCounted = builder.wordsCounted;
+        this.fingerprint = builder.fingerprint;
     }
 
     public TweetModel copy(){
@@ -142,6 +181,9 @@ public class TweetModel {
         other.positiveProbability = this.positiveProbability;
         other.negativeProbability = this.negativeProbability;
         other.neutralProbability = this.neutralProbability;
+        other.clusterID = this.clusterID;
+        other.wordsCounted = this.wordsCounted;
+        other.fingerprint = this.fingerprint;
         return other;
     }
 
@@ -191,6 +233,25 @@ public class TweetModel {
         return label;
     }
 
+    public long getClusterID() {
+        return clusterID;
+    }
+
+    /**
+     * Returns true if this tweet is a near-duplicate of an earlier tweet, which stands for its cluster
+     */
+    public boolean isNearDuplicate() {
+        return clusterID != 0 && clusterID != tweetID;
+    }
+
+    public boolean isWordsCounted() {
+        return wordsCounted;
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
     public void setTweetID(long tweetID) {
         this.tweetID = tweetID;
     }
@@ -231,6 +292,18 @@ public class TweetModel {
         this.neutralProbability = neutralProbability;
     }
 
+    public void setClusterID(long clusterID) {
+        this.clusterID = clusterID;
+    }
+
+    public void setWordsCounted(boolean wordsCounted) {
+        this.wordsCounted = wordsCounted;
+    }
+
+    public void setFingerprint(long fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
     @Override
     public String toString() {
         return "Tweet id: " +
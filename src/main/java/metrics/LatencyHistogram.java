@@ -0,0 +1,133 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies in nanoseconds with log-linear buckets, as in HdrHistogram: each power of two range is
+ * split in 64 buckets, so every recorded value is known within 1.6%, from 1 ns to the max long, in 30 KB.
+ * Recording is lock free and takes a few atomic increments, percentiles are computed from a {@link Snapshot}.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Buckets of each power of two range, values below 2 * SUB_BUCKETS have a bucket each
+     */
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final int BUCKETS = SUB_BUCKETS * (64 - SUB_BUCKET_BITS);
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a latency, negative latencies are recorded as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns a copy of the recorded latencies. Latencies recorded while it is taken may be partially included.
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        return new Snapshot(copy, total, sum.sum(), max.get());
+    }
+
+    private static int bucketOf(long value) {
+        if (value < 2 * SUB_BUCKETS)
+            return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKETS * (shift + 1) + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * Returns the middle of the values of a bucket
+     */
+    private static long valueOf(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS)
+            return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) / 2;
+    }
+
+    /**
+     * Latencies recorded up to some time
+     */
+    public static class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * Returns the latencies recorded since previous, an earlier snapshot of the same histogram.
+         * Its max is the highest bucket with recorded latencies.
+         */
+        public Snapshot since(Snapshot previous) {
+            long[] difference = new long[BUCKETS];
+            long highest = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                difference[i] = counts[i] - previous.counts[i];
+                if (difference[i] > 0)
+                    highest = Math.min(valueOf(i), max);
+            }
+            return new Snapshot(difference, count - previous.count, sum - previous.sum, highest);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Returns the latency below which a fraction of the latencies are, e.g. 0.99, 0 if there is none
+         */
+        public long getPercentile(double fraction) {
+            if (count == 0)
+                return 0;
+            long rank = Math.max(1, (long) Math.ceil(fraction * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank)
+                    return Math.min(valueOf(i), max);
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package metrics;
+
+import com.mongodb.event.CommandListener;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of the timed {@link Stage}s and of the MongoDB commands, exposed as JMX MBeans
+ * (com.csdauth.twitter:type=Stage and type=MongoCommand) and logged periodically.
+ *
+ * Metrics are off until {@link #enable(long)} is called. Stages are timed with
+ * <pre>
+ *     long start = Metrics.start();
+ *     ...
+ *     Metrics.stop(Stage.TRANSFORM, start);
+ * </pre>
+ * which, when off, costs a volatile read and a branch, without reading the clock.
+ */
+public final class Metrics {
+
+    private static final String JMX_DOMAIN = "com.csdauth.twitter";
+
+    private static volatile boolean enabled = false;
+
+    private static final ConcurrentMap<String, StageMetrics> mongoCommands = new ConcurrentHashMap<>();
+
+    private static long lastReportNanos;
+
+    private Metrics() {}
+
+    /**
+     * Turns metrics on, registers their MBeans, and logs a summary every reportIntervalSeconds and on exit
+     * @param reportIntervalSeconds seconds between logged summaries, 0 to log only on exit
+     */
+    public static synchronized void enable(long reportIntervalSeconds) {
+        if (enabled)
+            return;
+        enabled = true;
+
+        for (Stage stage : Stage.values())
+            register("Stage", stage.getMetrics());
+
+        lastReportNanos = System.nanoTime();
+        if (reportIntervalSeconds > 0) {
+            ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "metrics-reporter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reporter.scheduleAtFixedRate(Metrics::printInterval, reportIntervalSeconds, reportIntervalSeconds, TimeUnit.SECONDS);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(Metrics::printSummary, "metrics-summary"));
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the start time of an operation, 0 when metrics are off
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records an operation of stage which started at startNanos, returned by {@link #start()}
+     */
+    public static void stop(Stage stage, long startNanos) {
+        stop(stage, startNanos, 1);
+    }
+
+    /**
+     * Records an operation of stage which started at startNanos and processed items, e.g. tweets of a bulk write
+     */
+    public static void stop(Stage stage, long startNanos, long items) {
+        if (startNanos != 0)
+            stage.getMetrics().record(System.nanoTime() - startNanos, items);
+    }
+
+    /**
+     * Counts a failed operation of stage
+     */
+    public static void error(Stage stage) {
+        if (enabled)
+            stage.getMetrics().error();
+    }
+
+    /**
+     * Returns a listener timing the commands of a MongoDB client, to be added to its options when metrics are on
+     */
+    public static CommandListener commandListener() {
+        return new MongoCommandMetrics();
+    }
+
+    /**
+     * Returns the metrics of a MongoDB command, e.g. find, created on first use
+     */
+    static StageMetrics mongoCommand(String commandName) {
+        StageMetrics metrics = mongoCommands.get(commandName);
+        if (metrics != null)
+            return metrics;
+
+        StageMetrics created = new StageMetrics("mongo-" + commandName);
+        metrics = mongoCommands.putIfAbsent(commandName, created);
+        if (metrics != null)
+            return metrics;
+        register("MongoCommand", created);
+        return created;
+    }
+
+    /**
+     * Logs the operations of the stages and commands which were active since the previous log
+     */
+    private static void printInterval() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1, now - lastReportNanos) / 1e9;
+        lastReportNanos = now;
+
+        StringBuilder report = new StringBuilder();
+        for (StageMetrics metrics : allMetrics()) {
+            StageMetrics.Interval interval = metrics.interval();
+            if (interval.latencies.getCount() > 0)
+                report.append(line(metrics.getName(), interval.latencies, interval.items, interval.errors))
+                        .append(String.format(" %10.1f items/s\n", interval.items / seconds));
+        }
+        if (report.length() > 0)
+            System.out.printf("\n[metrics] last %.0f s:\n%s", seconds, report);
+    }
+
+    /**
+     * Logs the operations of every stage and command since the start
+     */
+    private static void printSummary() {
+        StringBuilder report = new StringBuilder();
+        for (StageMetrics metrics : allMetrics()) {
+            LatencyHistogram.Snapshot total = metrics.snapshot();
+            if (total.getCount() > 0)
+                report.append(line(metrics.getName(), total, metrics.getItems(), metrics.getErrors())).append('\n');
+        }
+        if (report.length() > 0)
+            System.out.printf("\n[metrics] total:\n%s", report);
+    }
+
+    private static String line(String name, LatencyHistogram.Snapshot latencies, long items, long errors) {
+        return String.format("  %-22s %9d ops %10d items %5d errors  p50 %.3f p99 %.3f p99.9 %.3f max %.3f ms",
+                name, latencies.getCount(), items, errors,
+                latencies.getPercentile(0.5) / 1e6, latencies.getPercentile(0.99) / 1e6,
+                latencies.getPercentile(0.999) / 1e6, latencies.getMax() / 1e6);
+    }
+
+    private static List<StageMetrics> allMetrics() {
+        List<StageMetrics> all = new ArrayList<>();
+        for (Stage stage : Stage.values())
+            all.add(stage.getMetrics());
+        for (Map.Entry<String, StageMetrics> command : new TreeMap<>(mongoCommands).entrySet())
+            all.add(command.getValue());
+        return all;
+    }
+
+    private static void register(String type, StageMetrics metrics) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(JMX_DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(metrics.getName()));
+            if (!server.isRegistered(name))
+                server.registerMBean(metrics, name);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package metrics;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the round trip time of each MongoDB command, by command name, as reported by the driver
+ */
+class MongoCommandMetrics implements CommandListener {
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        Metrics.mongoCommand(event.getCommandName()).record(event.getElapsedTime(TimeUnit.NANOSECONDS), 1);
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        StageMetrics metrics = Metrics.mongoCommand(event.getCommandName());
+        metrics.record(event.getElapsedTime(TimeUnit.NANOSECONDS), 1);
+        metrics.error();
+    }
+}
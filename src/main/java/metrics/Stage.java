@@ -0,0 +1,42 @@
+package metrics;
+
+/**
+ * Timed stages of the ingest and analysis paths
+ */
+public enum Stage {
+
+    /**
+     * Parse of a status of the twitter stream to a tweet model
+     */
+    INGEST_PARSE("ingest-parse"),
+    /**
+     * Insert of tweets in a collection, one operation per insert or bulk insert
+     */
+    INSERT("insert"),
+    /**
+     * Transformation of a tweet text and counting of its words
+     */
+    TRANSFORM("transform"),
+    /**
+     * Sentiment scoring of a tweet, from the request to the score
+     */
+    SCORE("score"),
+    /**
+     * Bulk write back of analyzed tweets
+     */
+    UPDATE("update"),
+    /**
+     * Render of a chart in every format
+     */
+    CHART_RENDER("chart-render");
+
+    private final StageMetrics metrics;
+
+    Stage(String name) {
+        this.metrics = new StageMetrics(name);
+    }
+
+    public StageMetrics getMetrics() {
+        return metrics;
+    }
+}
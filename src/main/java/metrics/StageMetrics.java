@@ -0,0 +1,123 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histogram of a stage of the ingest or analysis paths, or of a MongoDB command
+ */
+public class StageMetrics implements StageMetricsMXBean {
+
+    private final String name;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder items = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    /**
+     * Latencies and counters of the previous periodic report, see {@link #interval()}
+     */
+    private LatencyHistogram.Snapshot reported;
+    private long reportedItems = 0;
+    private long reportedErrors = 0;
+
+    StageMetrics(String name) {
+        this.name = name;
+        this.reported = latencies.snapshot();
+    }
+
+    /**
+     * Records an operation which processed items, e.g. a bulk insert of items tweets
+     */
+    public void record(long nanos, long items) {
+        latencies.record(nanos);
+        this.items.add(items);
+    }
+
+    public void error() {
+        errors.increment();
+    }
+
+    public LatencyHistogram.Snapshot snapshot() {
+        return latencies.snapshot();
+    }
+
+    /**
+     * Returns the operations recorded since the previous call
+     */
+    synchronized Interval interval() {
+        LatencyHistogram.Snapshot current = latencies.snapshot();
+        long currentItems = items.sum();
+        long currentErrors = errors.sum();
+
+        Interval interval = new Interval(current.since(reported), currentItems - reportedItems, currentErrors - reportedErrors);
+        reported = current;
+        reportedItems = currentItems;
+        reportedErrors = currentErrors;
+        return interval;
+    }
+
+    /**
+     * Latencies and counters of the operations of a period
+     */
+    static class Interval {
+
+        final LatencyHistogram.Snapshot latencies;
+        final long items;
+        final long errors;
+
+        Interval(LatencyHistogram.Snapshot latencies, long items, long errors) {
+            this.latencies = latencies;
+            this.items = items;
+            this.errors = errors;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCount() {
+        return latencies.getCount();
+    }
+
+    @Override
+    public long getItems() {
+        return items.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return snapshot().getMean() / 1e6;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return snapshot().getPercentile(0.5) / 1e6;
+    }
+
+    @Override
+    public double getP90Millis() {
+        return snapshot().getPercentile(0.9) / 1e6;
+    }
+
+    @Override
+    public double getP99Millis() {
+        return snapshot().getPercentile(0.99) / 1e6;
+    }
+
+    @Override
+    public double getP999Millis() {
+        return snapshot().getPercentile(0.999) / 1e6;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return snapshot().getMax() / 1e6;
+    }
+}
@@ -0,0 +1,33 @@
+package metrics;
+
+/**
+ * JMX view of a {@link StageMetrics}, latencies in milliseconds since the start of the process
+ */
+public interface StageMetricsMXBean {
+
+    String getName();
+
+    /**
+     * Returns the number of timed operations
+     */
+    long getCount();
+
+    /**
+     * Returns the number of items processed by the timed operations, e.g. the tweets of bulk inserts
+     */
+    long getItems();
+
+    long getErrors();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP90Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    double getMaxMillis();
+}
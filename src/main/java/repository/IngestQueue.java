@@ -0,0 +1,400 @@
+package repository;
+
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import utils.RingBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Hands items from a producer thread, e.g. the twitter stream thread, to consumer threads which store them,
+ * through a bounded lock-free {@link RingBuffer}. The producer returns as soon as an item is queued, so that
+ * a slow database does not stall it.
+ *
+ * When the buffer is full the producer either waits for a free slot, drops the oldest queued item, or
+ * appends the item to a spill file, which consumers read back once the buffer is empty.
+ * Idle threads back off from spinning to parking, instead of waiting on a lock.
+ */
+public class IngestQueue<T> {
+
+    public enum OverflowPolicy {
+        BLOCK, DROP_OLDEST, SPILL
+    }
+
+    public static class Builder<T> {
+
+        private int capacity = 1024;
+
+        private int consumers = 1;
+
+        private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+        private Path spillFile = Paths.get("ingest.spill");
+
+        private Codec<T> codec;
+
+        private String name = "ingest";
+
+        /**
+         * @param capacity max number of items in memory, rounded up to a power of 2
+         */
+        public Builder<T> setCapacity(int capacity) {
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * @param consumers number of threads consuming the items
+         */
+        public Builder<T> setConsumers(int consumers) {
+            this.consumers = Math.max(1, consumers);
+            return this;
+        }
+
+        public Builder<T> setOverflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+            return this;
+        }
+
+        /**
+         * @param spillFile file of the items which did not fit in memory, with the SPILL policy
+         */
+        public Builder<T> setSpillFile(Path spillFile) {
+            this.spillFile = spillFile;
+            return this;
+        }
+
+        /**
+         * @param codec writes and reads items of the spill file, required by the SPILL policy
+         */
+        public Builder<T> setCodec(Codec<T> codec) {
+            this.codec = codec;
+            return this;
+        }
+
+        /**
+         * @param name prefix of the consumer thread names
+         */
+        public Builder<T> setName(String name) {
+            this.name = name;
+            return this;
+        }
+
+        /**
+         * Creates the queue and starts its consumers
+         * @param action stores an item, called by the consumer threads
+         * @throws IOException if the spill file cannot be created
+         */
+        public IngestQueue<T> create(Consumer<? super T> action) throws IOException {
+            if (overflowPolicy == OverflowPolicy.SPILL && codec == null)
+                throw new IllegalStateException("The spill policy needs a codec");
+
+            IngestQueue<T> queue = new IngestQueue<>(this, action);
+            queue.consumerThreads.forEach(Thread::start);
+            return queue;
+        }
+    }
+
+    // End of Builder class -------------------------------------------------------------->
+
+    /**
+     * Longest time an idle thread sleeps before it checks the buffer again
+     */
+    private static final long MAX_PARK_NANOS = 1_000_000;
+
+    private final RingBuffer<T> buffer;
+    private final OverflowPolicy overflowPolicy;
+    private final Spill<T> spill;
+    private final Consumer<? super T> action;
+    private final List<Thread> consumerThreads = new ArrayList<>();
+
+    private volatile boolean closed = false;
+
+    private final AtomicLong offered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+
+    private IngestQueue(Builder<T> builder, Consumer<? super T> action) throws IOException {
+        this.buffer = new RingBuffer<>(builder.capacity);
+        this.overflowPolicy = builder.overflowPolicy;
+        this.spill = overflowPolicy == OverflowPolicy.SPILL ? new Spill<>(builder.spillFile, builder.codec) : null;
+        this.action = action;
+
+        for (int i = 0; i < builder.consumers; i++) {
+            Thread t = new Thread(this::consume, builder.name + "-" + (i + 1));
+            t.setDaemon(true);
+            consumerThreads.add(t);
+        }
+    }
+
+    /**
+     * Queues an item, applying the overflow policy if the buffer is full. Called by the producer thread only.
+     * @return false if the item was not queued, because the queue is closed or the producer was interrupted
+     */
+    public boolean put(T item) {
+        if (closed)
+            return false;
+        offered.incrementAndGet();
+
+        switch (overflowPolicy) {
+            case BLOCK:
+                for (int idle = 0; !buffer.offer(item); idle++) {
+                    if (closed || Thread.currentThread().isInterrupted()) {
+                        dropped.incrementAndGet();
+                        return false;
+                    }
+                    idle(idle);
+                }
+                return true;
+
+            case DROP_OLDEST:
+                while (!buffer.offer(item)) {
+                    if (buffer.poll() != null)
+                        dropped.incrementAndGet();
+                }
+                return true;
+
+            case SPILL:
+                // Once items are spilled, the next ones follow them on disk until consumers catch up
+                if (spill.isEmpty() && buffer.offer(item))
+                    return true;
+                try {
+                    spill.write(item);
+                    spilled.incrementAndGet();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    dropped.incrementAndGet();
+                    return false;
+                }
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Stops accepting items and waits until every queued item, in memory or spilled, has been consumed
+     */
+    public void close() {
+        closed = true;
+        try {
+            for (Thread t : consumerThreads)
+                t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        // Items queued by the producer while it was closing
+        for (T item = next(); item != null; item = next())
+            accept(item);
+
+        if (spill != null)
+            spill.delete();
+    }
+
+    /**
+     * Returns the number of items waiting in memory and in the spill file
+     */
+    public long getDepth() {
+        return buffer.size() + (spill == null ? 0 : spill.getPending());
+    }
+
+    public int getCapacity() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Returns the number of items given to {@link #put(Object)}
+     */
+    public long getOffered() {
+        return offered.get();
+    }
+
+    /**
+     * Returns the number of items lost: dropped by the DROP_OLDEST policy, or not queued
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns the number of items which were written to the spill file
+     */
+    public long getSpilled() {
+        return spilled.get();
+    }
+
+    public long getConsumed() {
+        return consumed.get();
+    }
+
+    /**
+     * Returns depth, capacity and counters of the queue
+     */
+    public String report() {
+        return String.format("queue %d/%d, %d dropped, %d spilled", getDepth(), getCapacity(), getDropped(), getSpilled());
+    }
+
+    /**
+     * Loop of the consumer threads, until the queue is closed and empty
+     */
+    private void consume() {
+        int idle = 0;
+        while (true) {
+            T item = next();
+            if (item != null) {
+                idle = 0;
+                accept(item);
+            } else if (closed) {
+                // Check again, the producer may have queued an item before it saw the queue closed
+                if ((item = next()) == null)
+                    return;
+                accept(item);
+            } else {
+                idle(idle++);
+            }
+        }
+    }
+
+    /**
+     * Returns the next item from memory or, when memory is empty, from the spill file
+     */
+    private T next() {
+        T item = buffer.poll();
+        if (item == null && spill != null && !spill.isEmpty()) {
+            try {
+                item = spill.read();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return item;
+    }
+
+    private void accept(T item) {
+        try {
+            action.accept(item);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+        consumed.incrementAndGet();
+    }
+
+    /**
+     * Backs off an idle thread: spins, then yields, then parks for longer and longer
+     */
+    private static void idle(int iteration) {
+        if (iteration < 100)
+            return;
+        if (iteration < 200)
+            Thread.yield();
+        else
+            LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1000L << Math.min(10, (iteration - 200) / 10)));
+    }
+
+    /**
+     * File of items as consecutive BSON documents, appended by the producer and read from the start by
+     * the consumers. When every item has been read, the file is truncated.
+     */
+    private static class Spill<T> {
+
+        private final Path file;
+        private final Codec<T> codec;
+        private final FileChannel channel;
+
+        private long readPosition = 0;
+        private long writePosition = 0;
+        private volatile long pending = 0;
+
+        Spill(Path file, Codec<T> codec) throws IOException {
+            this.file = file;
+            this.codec = codec;
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        boolean isEmpty() {
+            return pending == 0;
+        }
+
+        long getPending() {
+            return pending;
+        }
+
+        synchronized void write(T item) throws IOException {
+            BasicOutputBuffer output = new BasicOutputBuffer();
+            try (BsonBinaryWriter writer = new BsonBinaryWriter(output)) {
+                codec.encode(writer, item, EncoderContext.builder().build());
+            }
+
+            ByteBuffer bytes = ByteBuffer.wrap(output.getInternalBuffer(), 0, output.getSize());
+            while (bytes.hasRemaining())
+                writePosition += channel.write(bytes, writePosition);
+            pending++;
+        }
+
+        /**
+         * @return the oldest unread item, null if there is none
+         */
+        synchronized T read() throws IOException {
+            if (pending == 0)
+                return null;
+
+            // A document starts with its length, including the length itself
+            ByteBuffer length = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(length, readPosition);
+            ByteBuffer document = ByteBuffer.allocate(length.getInt(0));
+            readFully(document, readPosition);
+            readPosition += document.capacity();
+
+            document.flip();
+            T item;
+            try (BsonBinaryReader reader = new BsonBinaryReader(document)) {
+                item = codec.decode(reader, DecoderContext.builder().build());
+            }
+
+            if (--pending == 0) {
+                channel.truncate(0);
+                readPosition = 0;
+                writePosition = 0;
+            }
+            return item;
+        }
+
+        synchronized void delete() {
+            try {
+                channel.close();
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        private void readFully(ByteBuffer bytes, long position) throws IOException {
+            while (bytes.hasRemaining()) {
+                int read = channel.read(bytes, position + bytes.position());
+                if (read < 0)
+                    throw new IOException("Unexpected end of spill file " + file);
+            }
+        }
+    }
+}
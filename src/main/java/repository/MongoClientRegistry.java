@@ -0,0 +1,174 @@
+package repository;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoCompressor;
+import com.mongodb.ServerAddress;
+import com.mongodb.event.CommandListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shares one pooled {@link MongoClient} per host:port, so that repositories of several collections reuse
+ * warm connections instead of opening their own. Clients are created with the pool, socket and wire compression
+ * settings of the registry, and stay open until {@link #close()}.
+ */
+public class MongoClientRegistry {
+
+    public static class Builder {
+
+        private int connectionsPerHost = 100;
+
+        private int minConnectionsPerHost = 0;
+
+        private int maxConnectionIdleTimeMillis = 0;
+
+        private int connectTimeoutMillis = 10000;
+
+        private int socketTimeoutMillis = 0;
+
+        private boolean socketKeepAlive = true;
+
+        private List<String> compressors = Collections.singletonList("zlib");
+
+        private final List<CommandListener> commandListeners = new ArrayList<>();
+
+        /**
+         * @param connectionsPerHost max size of the connection pool of each client
+         */
+        public Builder setConnectionsPerHost(int connectionsPerHost) {
+            this.connectionsPerHost = Math.max(1, connectionsPerHost);
+            return this;
+        }
+
+        public Builder setMinConnectionsPerHost(int minConnectionsPerHost) {
+            this.minConnectionsPerHost = Math.max(0, minConnectionsPerHost);
+            return this;
+        }
+
+        /**
+         * @param maxConnectionIdleTimeMillis time after which an idle pooled connection is closed, 0 for no limit
+         */
+        public Builder setMaxConnectionIdleTimeMillis(int maxConnectionIdleTimeMillis) {
+            this.maxConnectionIdleTimeMillis = maxConnectionIdleTimeMillis;
+            return this;
+        }
+
+        public Builder setConnectTimeoutMillis(int connectTimeoutMillis) {
+            this.connectTimeoutMillis = connectTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * @param socketTimeoutMillis read timeout of the sockets, 0 for no timeout
+         */
+        public Builder setSocketTimeoutMillis(int socketTimeoutMillis) {
+            this.socketTimeoutMillis = socketTimeoutMillis;
+            return this;
+        }
+
+        public Builder setSocketKeepAlive(boolean socketKeepAlive) {
+            this.socketKeepAlive = socketKeepAlive;
+            return this;
+        }
+
+        /**
+         * @param compressors wire compressors offered to the server in order of preference, "snappy" or "zlib".
+         *                    The first one the server supports is used, none if it supports none of them.
+         */
+        public Builder setCompressors(List<String> compressors) {
+            this.compressors = compressors;
+            return this;
+        }
+
+        /**
+         * @param commandListener listener notified of the commands of every client, e.g. to time them
+         */
+        public Builder addCommandListener(CommandListener commandListener) {
+            commandListeners.add(commandListener);
+            return this;
+        }
+
+        @SuppressWarnings("deprecation")
+        public MongoClientRegistry create() {
+            List<MongoCompressor> compressorList = new ArrayList<>();
+            for (String compressor : compressors) {
+                switch (compressor.trim().toLowerCase()) {
+                    case "snappy":
+                        compressorList.add(MongoCompressor.createSnappyCompressor());
+                        break;
+                    case "zlib":
+                        compressorList.add(MongoCompressor.createZlibCompressor());
+                        break;
+                    case "":
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown wire compressor: " + compressor);
+                }
+            }
+
+            MongoClientOptions.Builder options = MongoClientOptions.builder();
+            commandListeners.forEach(options::addCommandListener);
+
+            return new MongoClientRegistry(options
+                    .connectionsPerHost(connectionsPerHost)
+                    .minConnectionsPerHost(Math.min(minConnectionsPerHost, connectionsPerHost))
+                    .maxConnectionIdleTime(maxConnectionIdleTimeMillis)
+                    .connectTimeout(connectTimeoutMillis)
+                    .socketTimeout(socketTimeoutMillis)
+                    .socketKeepAlive(socketKeepAlive)
+                    .compressorList(compressorList)
+                    .build());
+        }
+    }
+
+    // End of Builder class -------------------------------------------------------------->
+
+    /**
+     * Registry used by {@link MongoRepository} factory methods
+     */
+    private static MongoClientRegistry shared = new Builder().create();
+
+    private final MongoClientOptions options;
+    private final Map<String, MongoClient> clients = new HashMap<>();
+
+    private MongoClientRegistry(MongoClientOptions options) {
+        this.options = options;
+    }
+
+    public static synchronized MongoClientRegistry getShared() {
+        return shared;
+    }
+
+    /**
+     * Replaces the shared registry. Clients of the previous one are closed.
+     */
+    public static synchronized void setShared(MongoClientRegistry registry) {
+        if (shared != registry)
+            shared.close();
+        shared = registry;
+    }
+
+    /**
+     * Returns the client of host:port, created on first use
+     */
+    public synchronized MongoClient getClient(String host, int port) {
+        return clients.computeIfAbsent(host + ":" + port, address -> new MongoClient(new ServerAddress(host, port), options));
+    }
+
+    public MongoClientOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * Closes all clients and their pooled connections
+     */
+    public synchronized void close() {
+        clients.values().forEach(MongoClient::close);
+        clients.clear();
+    }
+}
@@ -3,6 +3,8 @@ package repository;
 import domain.TweetModel;
 
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * CLASS DESCRIPTION HERE
@@ -11,5 +13,15 @@ import java.util.List;
  */
 public interface MongoQuery {
 
-    public List<TweetModel> getResults();
+    /**
+     * Returns the results lazily, read from the server batch by batch as the stream is consumed.
+     * The stream holds a cursor and must be closed, e.g. with try-with-resources.
+     */
+    public Stream<TweetModel> stream();
+
+    public default List<TweetModel> getResults() {
+        try (Stream<TweetModel> results = stream()) {
+            return results.collect(Collectors.toList());
+        }
+    }
 }
@@ -1,17 +1,37 @@
 package repository;
 
 import com.mongodb.Block;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
 import com.mongodb.MongoClient;
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.*;
+import com.mongodb.client.model.*;
 import domain.TweetModel;
+import metrics.Metrics;
+import metrics.Stage;
+import org.bson.Document;
 import org.bson.codecs.configuration.CodecRegistry;
-import org.bson.codecs.pojo.PojoCodecProvider;
 import org.bson.conversions.Bson;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Stream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.mongodb.client.model.Filters.eq;
-import static org.bson.codecs.configuration.CodecRegistries.fromProviders;
+import static org.bson.codecs.configuration.CodecRegistries.fromCodecs;
 import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
 
 /**
@@ -26,6 +46,32 @@ public class MongoRepository {
     private static final int DEFAULT_MONGO_PORT = 27017;
     private static final int DEFAULT_MAX_TWEETS_PER_COLLECTION = 1500;
 
+    /**
+     * Suffixes of the collections which keep the state of incremental analyses
+     */
+    private static final String ANALYSIS_STATE_SUFFIX = "_analysisState";
+    private static final String WORD_COUNTS_SUFFIX = "_wordCounts";
+    private static final String CHECKPOINT_ID = "wordCountsCheckpoint";
+    private static final int WORD_COUNTS_BATCH_SIZE = 1000;
+
+    /**
+     * Field set by the server to the time a tweet's analysis was written back
+     */
+    public static final String ANALYZED_AT = "analyzedAt";
+
+    /**
+     * Field set on tweets which have a text to score but no label yet, e.g. because of the daily limit of the
+     * sentiment web api, and removed once they are scored
+     */
+    public static final String SCORE_PENDING = "scorePending";
+
+    /**
+     * Error codes of an index build which finds duplicate keys, and of an index which exists with other options
+     */
+    private static final int DUPLICATE_KEY = 11000;
+    private static final int INDEX_OPTIONS_CONFLICT = 85;
+    private static final int INDEX_KEY_SPECS_CONFLICT = 86;
+
     private MongoClient mongoClient;
     private MongoDatabase mongoDatabase;
     private String collectionName;
@@ -33,7 +79,30 @@ public class MongoRepository {
     private long maxCollectionCount;
 
     /**
-     * Factory method to create instances.
+     * Write-behind state. When enabled, added items are buffered and flushed with a single insertMany
+     * every {@link #writeBehindBatchSize} items or every flush interval, whichever comes first.
+     */
+    private boolean writeBehind = false;
+    private int writeBehindBatchSize;
+    private List<TweetModel> writeBehindBuffer;
+    private long writeBehindCount;
+    private ScheduledExecutorService flushScheduler;
+
+    /**
+     * Called with each tweet once it has been inserted, null if not set
+     */
+    private volatile Consumer<TweetModel> insertListener;
+
+    /**
+     * Whether tweetID has a unique index, so that inserting a stored tweet fails, and number of duplicate tweets
+     * which were not inserted
+     */
+    private volatile boolean uniqueTweetIDs = false;
+    private final AtomicLong duplicates = new AtomicLong();
+
+    /**
+     * Factory method to create instances. Instances of the same host and port share the client of
+     * {@link MongoClientRegistry#getShared()}.
      */
     public static MongoRepository newInstance(String collectionName) {
         return MongoRepository.newInstance(collectionName, DEFAULT_DATABASE_NAME);
@@ -53,32 +122,50 @@ public class MongoRepository {
                                               int port,
                                               int maxCollectionCount){
 
-        return new MongoRepository(collectionName,database,host,port,maxCollectionCount);
+        return new MongoRepository(collectionName,database,MongoClientRegistry.getShared().getClient(host,port),maxCollectionCount);
+    }
+
+    /**
+     * Factory method to create instances for several collections of the same database.
+     * Instances of the same host and port share the client of {@link MongoClientRegistry#getShared()}.
+     */
+    public static List<MongoRepository> newInstances(List<String> collectionNames,
+                                                     String database,
+                                                     String host,
+                                                     int port,
+                                                     int maxCollectionCount){
+
+        MongoClient client = MongoClientRegistry.getShared().getClient(host,port);
+
+        List<MongoRepository> repositories = new ArrayList<>(collectionNames.size());
+        for (String collectionName : collectionNames)
+            repositories.add(new MongoRepository(collectionName,database,client,maxCollectionCount));
+
+        return repositories;
     }
 
 
     private MongoRepository(String collectionName,
                             String database,
-                            String host,
-                            int port,
+                            MongoClient mongoClient,
                             long maxCollectionCount) {
 
         //DEBUG
-        //System.out.println("Initiating Mongo client on port: " + port);
+        //System.out.println("Initiating Mongo client on: " + mongoClient.getConnectPoint());
 
         //Initiate client and database reference
-        this.mongoClient = new MongoClient(host,port);
+        this.mongoClient = mongoClient;
         this.mongoDatabase = this.mongoClient.getDatabase(database);
         this.collectionName = collectionName;
 
-        //Configure a POJO codec registry to automatically parse Tweet model to Mongo Document model
-        CodecRegistry pojoCodecRegistry = fromRegistries(MongoClient.getDefaultCodecRegistry(),
-                fromProviders(PojoCodecProvider.builder().automatic(true).build()));
+        //Configure a codec registry to parse Tweet model to Mongo Document model without reflection
+        CodecRegistry tweetCodecRegistry = fromRegistries(fromCodecs(new TweetModelCodec()),
+                MongoClient.getDefaultCodecRegistry());
 
         // Get or create collection in Database
         this.collection = mongoDatabase.
                 getCollection(collectionName,TweetModel.class)
-                .withCodecRegistry(pojoCodecRegistry);
+                .withCodecRegistry(tweetCodecRegistry);
 
         this.maxCollectionCount = maxCollectionCount;
 
@@ -113,22 +200,151 @@ public class MongoRepository {
         return collection.aggregate(aggregates);
     }
 
+    /**
+     * Runs an aggregation whose results are not tweets. Stages may use disk, so that large groups do not hit
+     * the memory limit of the server.
+     */
+    public <T> AggregateIterable<T> collectionAggregate(List<Bson> aggregates, Class<T> resultClass) {
+        return collection.aggregate(aggregates, resultClass).allowDiskUse(true);
+    }
+
     public <T> DistinctIterable<T> distinctCollection(String fieldname, Class<T> type) {
         return collection.distinct(fieldname, type);
     }
 
+    /**
+     * Returns the items count of the collection. In write-behind mode the in-process counter is returned,
+     * which includes the items still waiting to be flushed and does not cost a round-trip.
+     */
     public long getCollectionCount() {
+        if (writeBehind) {
+            synchronized (this) {
+                return writeBehindCount;
+            }
+        }
         return collection.count();
     }
 
+    /**
+     * Returns the count of items matching filter
+     */
+    public long getCollectionCount(Bson filter) {
+        return collection.count(filter);
+    }
+
     public long getMaxCollectionCount() {
         return maxCollectionCount;
     }
 
     /**
-     * Just cleanup things, no necessary still
+     * Enables write-behind mode. Added items are kept in memory and inserted in batches.
+     * The max count of collection is enforced by an in-process counter initialized from the collection count.
+     * @param batchSize number of buffered items that triggers a flush
+     * @param flushIntervalMillis max time an item may stay in the buffer, 0 to flush only on size
+     */
+    public synchronized void enableWriteBehind(int batchSize, long flushIntervalMillis) {
+        if (writeBehind || batchSize <= 1)
+            return;
+
+        this.writeBehindBatchSize = batchSize;
+        this.writeBehindBuffer = new ArrayList<>(batchSize);
+        this.writeBehindCount = collection.count();
+        this.writeBehind = true;
+
+        if (flushIntervalMillis > 0) {
+            this.flushScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "mongo-write-behind-" + collectionName);
+                t.setDaemon(true);
+                return t;
+            });
+            this.flushScheduler.scheduleWithFixedDelay(this::scheduledFlush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Flush of the flush scheduler. Errors are reported instead of thrown, which would cancel the next flushes;
+     * the items which were not inserted stay buffered for the next flush.
+     */
+    private void scheduledFlush() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Inserts all buffered items in collection. Does nothing when write-behind mode is off.
+     * When some items fail to insert, the inserted ones and the duplicates are removed from the buffer,
+     * the failed ones stay buffered, and the error is thrown.
+     */
+    public synchronized void flush() {
+        if (!writeBehind || writeBehindBuffer.isEmpty())
+            return;
+
+        int batchSize = writeBehindBuffer.size();
+        long start = Metrics.start();
+        try {
+            collection.insertMany(writeBehindBuffer, new InsertManyOptions().ordered(false));
+            notifyInserted(writeBehindBuffer, null);
+        } catch (MongoBulkWriteException e) {
+            // The insert is unordered, so every tweet without a write error has been inserted. Tweets rejected by
+            // the unique index on tweetID are duplicates, the others are kept to be inserted by the next flush.
+            List<TweetModel> failed = new ArrayList<>(writeBehindBatchSize);
+            boolean[] notInserted = new boolean[batchSize];
+            long rejected = 0;
+            for (BulkWriteError error : e.getWriteErrors()) {
+                notInserted[error.getIndex()] = true;
+                if (ErrorCategory.fromErrorCode(error.getCode()) == ErrorCategory.DUPLICATE_KEY)
+                    rejected++;
+                else
+                    failed.add(writeBehindBuffer.get(error.getIndex()));
+            }
+            writeBehindCount -= rejected;
+            duplicates.addAndGet(rejected);
+            notifyInserted(writeBehindBuffer, notInserted);
+
+            if (!failed.isEmpty()) {
+                writeBehindBuffer = failed;
+                Metrics.error(Stage.INSERT);
+                throw e;
+            }
+        } finally {
+            Metrics.stop(Stage.INSERT, start, batchSize);
+        }
+        writeBehindBuffer = new ArrayList<>(writeBehindBatchSize);
+    }
+
+    /**
+     * Sets the listener called with each tweet once it has been inserted, by the thread which inserted it.
+     * With write-behind, tweets are reported when their batch is flushed, not when they are added.
+     */
+    public void setInsertListener(Consumer<TweetModel> listener) {
+        this.insertListener = listener;
+    }
+
+    /**
+     * Calls the insert listener with the tweets of batch, except those marked in notInserted if not null
+     */
+    private void notifyInserted(List<TweetModel> batch, boolean[] notInserted) {
+        Consumer<TweetModel> listener = insertListener;
+        if (listener == null)
+            return;
+        for (int i = 0; i < batch.size(); i++)
+            if (notInserted == null || !notInserted[i])
+                listener.accept(batch.get(i));
+    }
+
+    /**
+     * Flushes any buffered items and stops the flush scheduler. The client is shared with other repositories,
+     * it is closed by {@link MongoClientRegistry#close()}.
      */
     public void disconnect(){
+        if (flushScheduler != null) {
+            flushScheduler.shutdown();
+            flushScheduler = null;
+        }
+        flush();
         this.mongoDatabase = null;
         this.mongoClient = null;
         this.collection = null;
@@ -140,10 +356,15 @@ public class MongoRepository {
      */
     public void addItem(TweetModel tweet) throws MaxCountReachedException{
 
+        if (writeBehind) {
+            addItemWriteBehind(tweet);
+            return;
+        }
+
         if (this.collection.count() < maxCollectionCount){
             //DEBUG
             //System.out.println("Adding tweet #" + ++currentEntriesInCollection);
-            this.collection.insertOne(tweet);
+            insertIfAbsent(tweet);
         }
         else {
             throw new MaxCountReachedException(collectionName);
@@ -151,17 +372,391 @@ public class MongoRepository {
 
     }
 
+    /**
+     * Adds a tweet which may already be stored, e.g. a tweet reported maybe present by a filter of the stored tweetIDs.
+     * The tweet is inserted right away, so that the unique index on tweetID rejects it if it is stored; without
+     * a unique index, the collection is queried for its tweetID first.
+     * @return false if a tweet with the same tweetID is stored or buffered, so the tweet was not added
+     * @throws MaxCountReachedException when max number of items for this collection has been reached
+     */
+    public synchronized boolean addItemIfAbsent(TweetModel tweet) throws MaxCountReachedException {
+
+        if (writeBehind) {
+            if (writeBehindCount >= maxCollectionCount)
+                throw new MaxCountReachedException(collectionName);
+            for (TweetModel buffered : writeBehindBuffer)
+                if (buffered.getTweetID() == tweet.getTweetID()) {
+                    duplicates.incrementAndGet();
+                    return false;
+                }
+        } else if (collection.count() >= maxCollectionCount) {
+            throw new MaxCountReachedException(collectionName);
+        }
+
+        if (!uniqueTweetIDs && collection.count(eq("tweetID", tweet.getTweetID())) > 0) {
+            duplicates.incrementAndGet();
+            return false;
+        }
+
+        if (!insertIfAbsent(tweet))
+            return false;
+        if (writeBehind)
+            writeBehindCount++;
+        return true;
+    }
+
+    /**
+     * Inserts a tweet, unless the unique index on tweetID rejects it
+     * @return false if the tweet is a duplicate
+     */
+    private boolean insertIfAbsent(TweetModel tweet) {
+        long start = Metrics.start();
+        try {
+            collection.insertOne(tweet);
+            Consumer<TweetModel> listener = insertListener;
+            if (listener != null)
+                listener.accept(tweet);
+            return true;
+        } catch (MongoWriteException e) {
+            if (e.getError().getCategory() != ErrorCategory.DUPLICATE_KEY) {
+                Metrics.error(Stage.INSERT);
+                throw e;
+            }
+            duplicates.incrementAndGet();
+            return false;
+        } finally {
+            Metrics.stop(Stage.INSERT, start);
+        }
+    }
+
+    /**
+     * Returns the number of duplicate tweets which were not added
+     */
+    public long getDuplicateCount() {
+        return duplicates.get();
+    }
+
+    /**
+     * Calls action with the tweetID of every tweet of the collection
+     */
+    public void forEachTweetID(LongConsumer action) {
+        try (Stream<TweetModel> tweets = newQuery()
+                .setFields(TweetField.TWEET_ID)
+                .setBatchSize(10000)
+                .create()
+                .stream()) {
+            tweets.forEach(tweet -> action.accept(tweet.getTweetID()));
+        }
+    }
+
+    /**
+     * Buffers a tweet and flushes the buffer if it is full
+     */
+    private synchronized void addItemWriteBehind(TweetModel tweet) throws MaxCountReachedException {
+
+        if (writeBehindCount >= maxCollectionCount)
+            throw new MaxCountReachedException(collectionName);
+
+        writeBehindBuffer.add(tweet);
+        writeBehindCount++;
+
+        if (writeBehindBuffer.size() >= writeBehindBatchSize)
+            flush();
+    }
+
     /**
      * Updates a tweet based on tweetID
      */
     public void updateItem(TweetModel tweet) {
+        long start = Metrics.start();
         collection.replaceOne(eq("tweetID", tweet.getTweetID()), tweet);
+        Metrics.stop(Stage.UPDATE, start);
+    }
+
+    /**
+     * Updates only the analysis fields (transformed text, label and probabilities) of the given tweets,
+     * with a single unordered bulk write. The transformed text of a tweet is left as it is when it is null,
+     * e.g. for a skipped tweet, the wordsCounted flag is set when the tweet's is, and {@link #SCORE_PENDING}
+     * is set on tweets with a transformed text but no label and removed from the others.
+     * @return the bulk write result, which holds the matched and modified counts
+     */
+    public BulkWriteResult updateAnalysisFields(List<TweetModel> tweets) {
+        List<WriteModel<TweetModel>> updates = new ArrayList<>(tweets.size());
+
+        for (TweetModel tweet : tweets) {
+            List<Bson> fields = new ArrayList<>(8);
+            if (tweet.getTransformedTweetText() != null)
+                fields.add(Updates.set("transformedTweetText", tweet.getTransformedTweetText()));
+            fields.add(Updates.set("label", tweet.getLabel()));
+            fields.add(Updates.set("positiveProbability", tweet.getPositiveProbability()));
+            fields.add(Updates.set("negativeProbability", tweet.getNegativeProbability()));
+            fields.add(Updates.set("neutralProbability", tweet.getNeutralProbability()));
+            if (tweet.isWordsCounted())
+                fields.add(Updates.set("wordsCounted", true));
+            boolean scorePending = tweet.getLabel() == null &&
+                    tweet.getTransformedTweetText() != null && !tweet.getTransformedTweetText().isEmpty();
+            fields.add(scorePending ? Updates.set(SCORE_PENDING, true) : Updates.unset(SCORE_PENDING));
+            fields.add(Updates.currentDate(ANALYZED_AT));
+
+            updates.add(new UpdateOneModel<>(eq("tweetID", tweet.getTweetID()), Updates.combine(fields)));
+        }
+
+        long start = Metrics.start();
+        try {
+            return collection.bulkWrite(updates, new BulkWriteOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            Metrics.error(Stage.UPDATE);
+            throw e;
+        } finally {
+            Metrics.stop(Stage.UPDATE, start, tweets.size());
+        }
+    }
+
+    /**
+     * Sets the near-duplicate cluster of tweets, with a single unordered bulk write. The clusterID of a tweet
+     * without near-duplicates, 0, is removed from its document.
+     * @param tweetIDs tweetIDs of the tweets, the first count are written
+     * @param clusterIDs cluster of each tweet
+     */
+    public BulkWriteResult updateClusterIDs(long[] tweetIDs, long[] clusterIDs, int count) {
+        List<WriteModel<TweetModel>> updates = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++)
+            updates.add(new UpdateOneModel<>(
+                    eq("tweetID", tweetIDs[i]),
+                    clusterIDs[i] == 0 ? Updates.unset("clusterID") : Updates.set("clusterID", clusterIDs[i])));
+
+        return collection.bulkWrite(updates, new BulkWriteOptions().ordered(false));
+    }
+
+    /**
+     * Sets the fingerprint of the first count tweets of tweetIDs to the fingerprint at the same index, or removes it if 0
+     */
+    public BulkWriteResult updateFingerprints(long[] tweetIDs, long[] fingerprints, int count) {
+        List<WriteModel<TweetModel>> updates = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++)
+            updates.add(new UpdateOneModel<>(
+                    eq("tweetID", tweetIDs[i]),
+                    fingerprints[i] == 0 ? Updates.unset("fingerprint") : Updates.set("fingerprint", fingerprints[i])));
+
+        return collection.bulkWrite(updates, new BulkWriteOptions().ordered(false));
+    }
+
+    /**
+     * Creates, if it does not exist, a unique ascending index on tweetID, so that duplicate tweets are rejected.
+     * If the collection already holds duplicates, or has a non unique index on tweetID, the index is not unique.
+     * @return true if the index is unique
+     */
+    public boolean createTweetIdIndex() {
+        try {
+            collection.createIndex(Indexes.ascending("tweetID"), new IndexOptions().unique(true));
+            uniqueTweetIDs = true;
+        } catch (MongoCommandException e) {
+            if (e.getErrorCode() == DUPLICATE_KEY) {
+                System.out.println("Collection " + collectionName + " holds duplicate tweets, its tweetID index is not unique");
+                createAscendingIndex("tweetID");
+            } else if (e.getErrorCode() != INDEX_OPTIONS_CONFLICT && e.getErrorCode() != INDEX_KEY_SPECS_CONFLICT) {
+                throw e;
+            }
+            uniqueTweetIDs = false;
+        }
+        return uniqueTweetIDs;
+    }
+
+    /**
+     * Creates, if it does not exist, an ascending index on fieldName
+     */
+    public void createAscendingIndex(String fieldName) {
+        collection.createIndex(Indexes.ascending(fieldName));
+    }
+
+    /**
+     * Returns the highest tweetID of the collection, null if it is empty
+     */
+    public Long getMaxTweetID() {
+        TweetModel last = newQuery()
+                .setFields(TweetField.TWEET_ID)
+                .setSort(Sorts.descending("tweetID"))
+                .setLimit(1)
+                .create()
+                .iterable()
+                .first();
+        return last == null ? null : last.getTweetID();
+    }
+
+    /**
+     * Returns the current time of the server, to compare with the times of {@link #ANALYZED_AT}
+     */
+    public Date getServerTime() {
+        return mongoDatabase.runCommand(new Document("isMaster", 1)).getDate("localTime");
+    }
+
+    /**
+     * Returns true if the server supports the $merge aggregation stage, added in MongoDB 4.2
+     */
+    public boolean supportsMergeStage() {
+        @SuppressWarnings("unchecked")
+        List<Integer> version = (List<Integer>) mongoDatabase.runCommand(new Document("buildInfo", 1)).get("versionArray");
+        return version.get(0) > 4 || version.get(0) == 4 && version.get(1) >= 2;
+    }
+
+    /**
+     * Runs an aggregation which ends with an $out or $merge stage, so that its results stay in the server
+     */
+    public void aggregateInto(List<Bson> pipeline) {
+        AggregateIterable<Document> aggregation = collection.aggregate(pipeline, Document.class).allowDiskUse(true);
+
+        // The driver reads back the output collection when iterating an $out aggregation
+        Bson last = pipeline.get(pipeline.size() - 1);
+        if (last.toBsonDocument(Document.class, collection.getCodecRegistry()).containsKey("$out")) {
+            aggregation.toCollection();
+            return;
+        }
+
+        // The cursor of a $merge aggregation returns no documents
+        try (MongoCursor<Document> cursor = aggregation.iterator()) {
+            while (cursor.hasNext())
+                cursor.next();
+        }
+    }
+
+    /**
+     * Returns the stored state of an analysis, null if there is none
+     * @param id name of the analysis
+     */
+    public Document getAnalysisState(String id) {
+        return analysisState().find(eq("_id", id)).first();
+    }
+
+    /**
+     * Stores the state of an analysis, replacing the previous one
+     * @param id name of the analysis
+     */
+    public void saveAnalysisState(String id, Document state) {
+        analysisState().replaceOne(eq("_id", id), new Document(state).append("_id", id), new UpdateOptions().upsert(true));
+    }
+
+    /**
+     * Creates, if they do not exist, the indexes of the tweets read by incremental analyses: an index on the
+     * wordsCounted flag, which holds the tweets not counted yet under its null and false keys, and a partial index
+     * on the tweets waiting for their score
+     */
+    public void createIncrementalAnalysisIndexes() {
+        collection.createIndex(Indexes.ascending("wordsCounted"));
+        collection.createIndex(Indexes.ascending(SCORE_PENDING),
+                new IndexOptions().partialFilterExpression(eq(SCORE_PENDING, true)));
+    }
+
+    /**
+     * Returns true if an incremental analysis saved a checkpoint, so that the stored word counts hold the words of
+     * exactly the tweets flagged wordsCounted
+     */
+    public boolean hasAnalysisCheckpoint() {
+        return analysisState().find(eq("_id", CHECKPOINT_ID)).first() != null;
+    }
+
+    /**
+     * Stores the checkpoint of a completed incremental analysis, with the time it completed
+     */
+    public void saveAnalysisCheckpoint() {
+        analysisState().replaceOne(eq("_id", CHECKPOINT_ID),
+                new Document("_id", CHECKPOINT_ID).append("savedAt", new Date()),
+                new UpdateOptions().upsert(true));
+    }
+
+    /**
+     * Deletes the checkpoint, so that the stored analysis state is not trusted until the next checkpoint is saved
+     */
+    public void deleteAnalysisCheckpoint() {
+        analysisState().deleteOne(eq("_id", CHECKPOINT_ID));
+    }
+
+    /**
+     * Adds words counts to the stored words counts of the collection, with unordered bulk upserts
+     * @param counts called with an action which must be called once for every word and its count
+     */
+    public void incrementWordCounts(Consumer<ObjIntConsumer<String>> counts) {
+        MongoCollection<Document> wordCounts = mongoDatabase.getCollection(collectionName + WORD_COUNTS_SUFFIX);
+        List<WriteModel<Document>> batch = new ArrayList<>(WORD_COUNTS_BATCH_SIZE);
+        UpdateOptions upsert = new UpdateOptions().upsert(true);
+
+        counts.accept((word, count) -> {
+            batch.add(new UpdateOneModel<>(eq("_id", word), Updates.inc("count", count), upsert));
+            if (batch.size() == WORD_COUNTS_BATCH_SIZE) {
+                wordCounts.bulkWrite(batch, new BulkWriteOptions().ordered(false));
+                batch.clear();
+            }
+        });
+
+        if (!batch.isEmpty())
+            wordCounts.bulkWrite(batch, new BulkWriteOptions().ordered(false));
+    }
+
+    /**
+     * Calls action for every stored word and its count
+     */
+    public void forEachWordCount(ObjIntConsumer<String> action) {
+        mongoDatabase.getCollection(collectionName + WORD_COUNTS_SUFFIX)
+                .find()
+                .batchSize(WORD_COUNTS_BATCH_SIZE)
+                .forEach((Block<Document>) d -> action.accept(d.getString("_id"), d.getInteger("count")));
+    }
+
+    /**
+     * Drops the state of incremental analyses: checkpoint and stored words counts
+     */
+    public void dropAnalysisState() {
+        analysisState().drop();
+        mongoDatabase.getCollection(collectionName + WORD_COUNTS_SUFFIX).drop();
+    }
+
+    /**
+     * Sums the sentiment probabilities of all tweets in collection, server side
+     * @return document with positiveProbability, negativeProbability and neutralProbability sums
+     */
+    public Document sumSentimentProbabilities() {
+        return sumSentimentProbabilities(false);
+    }
+
+    /**
+     * Sums the sentiment probabilities of the tweets in collection, server side
+     * @param excludeNearDuplicates whether to leave out near-duplicates, the tweets whose clusterID is not their own
+     *                              tweetID, so that each cluster counts once
+     * @return document with positiveProbability, negativeProbability and neutralProbability sums
+     */
+    public Document sumSentimentProbabilities(boolean excludeNearDuplicates) {
+        List<Bson> pipeline = new ArrayList<>(2);
+        if (excludeNearDuplicates)
+            pipeline.add(Aggregates.match(Filters.or(
+                    Filters.exists("clusterID", false),
+                    new Document("$expr", new Document("$eq", Arrays.asList("$clusterID", "$tweetID"))))));
+        pipeline.add(Aggregates.group(null,
+                Accumulators.sum("positiveProbability", "$positiveProbability"),
+                Accumulators.sum("negativeProbability", "$negativeProbability"),
+                Accumulators.sum("neutralProbability", "$neutralProbability")));
+
+        Document sums = collection.aggregate(pipeline, Document.class).first();
+        return sums == null ? new Document("positiveProbability", 0.0)
+                .append("negativeProbability", 0.0)
+                .append("neutralProbability", 0.0) : sums;
+    }
+
+    private MongoCollection<Document> analysisState() {
+        return mongoDatabase.getCollection(collectionName + ANALYSIS_STATE_SUFFIX);
     }
 
     public List<TweetModel> query(MongoQuery query){
         return query.getResults();
     }
 
+    /**
+     * Returns a builder of a query of the collection
+     */
+    public TweetQuery.Builder newQuery() {
+        return new TweetQuery.Builder(collection);
+    }
+
     /**
      * Prints items of collection
      * @param s: Short printing: Will be print: 5 items, total count of items
@@ -0,0 +1,121 @@
+package repository;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static com.mongodb.client.model.Filters.*;
+
+/**
+ * Catalog of the partitions of a keyword, in collection '&lt;keyword&gt;_partitions'.
+ * Each entry is the name of a partition collection with the time range of its bucket, so that analyses
+ * can find the partitions of a time range, and partitions older than a retention period can be dropped
+ * as whole collections.
+ */
+public class PartitionCatalog {
+
+    private static final String CATALOG_SUFFIX = "_partitions";
+
+    private static final String START = "start";
+    private static final String END = "end";
+    private static final String SEQUENCE = "sequence";
+    private static final String CREATED_AT = "createdAt";
+
+    private final MongoDatabase database;
+    private final String keyword;
+    private final MongoCollection<Document> catalog;
+
+    public static PartitionCatalog newInstance(String keyword, String database, String host, int port) {
+        return new PartitionCatalog(MongoClientRegistry.getShared().getClient(host, port).getDatabase(database), keyword);
+    }
+
+    private PartitionCatalog(MongoDatabase database, String keyword) {
+        this.database = database;
+        this.keyword = keyword;
+        this.catalog = database.getCollection(keyword + CATALOG_SUFFIX);
+    }
+
+    public String getKeyword() {
+        return keyword;
+    }
+
+    /**
+     * Adds a partition to the catalog, unless it is already there
+     * @param start start of the partition's bucket
+     * @param end end of the partition's bucket
+     * @param sequence number of the partition in its bucket
+     */
+    public void register(String partition, Date start, Date end, int sequence) {
+        catalog.createIndex(Indexes.ascending(START, SEQUENCE));
+        catalog.updateOne(eq("_id", partition),
+                Updates.combine(
+                        Updates.set(START, start),
+                        Updates.set(END, end),
+                        Updates.set(SEQUENCE, sequence),
+                        Updates.setOnInsert(CREATED_AT, new Date())),
+                new UpdateOptions().upsert(true));
+    }
+
+    /**
+     * Returns the number of the last partition of the bucket starting at start, 0 if it has none
+     */
+    public int lastSequence(Date start) {
+        Document last = catalog.find(eq(START, start)).sort(Sorts.descending(SEQUENCE)).first();
+        return last == null ? 0 : last.getInteger(SEQUENCE, 0);
+    }
+
+    public boolean isEmpty() {
+        return catalog.count() == 0;
+    }
+
+    /**
+     * Returns the partitions whose bucket overlaps the time range, in time order
+     * @param from start of the range, null for no lower bound
+     * @param to end of the range, null for no upper bound
+     */
+    public List<String> find(Date from, Date to) {
+        List<Bson> conditions = new ArrayList<>();
+        if (from != null)
+            conditions.add(gt(END, from));
+        if (to != null)
+            conditions.add(lt(START, to));
+
+        return catalog.find(conditions.isEmpty() ? new Document() : and(conditions))
+                .sort(Sorts.ascending(START, SEQUENCE))
+                .map(entry -> entry.getString("_id"))
+                .into(new ArrayList<>());
+    }
+
+    /**
+     * Drops the partitions whose bucket ended before cutoff, with the analysis collections derived from them,
+     * and removes them from the catalog
+     * @return the number of dropped partitions
+     */
+    public int dropBefore(Date cutoff) {
+        List<String> expired = catalog.find(lte(END, cutoff))
+                .map(entry -> entry.getString("_id"))
+                .into(new ArrayList<>());
+
+        for (String partition : expired) {
+            // Analysis collections are named after the partition with an alphabetic suffix, e.g. _wordCounts
+            Pattern derived = Pattern.compile("^" + Pattern.quote(partition) + "_[A-Za-z]+$");
+            for (String collection : database.listCollectionNames())
+                if (collection.equals(partition) || derived.matcher(collection).matches())
+                    database.getCollection(collection).drop();
+
+            catalog.deleteOne(eq("_id", partition));
+            System.out.println("\nDropped expired partition " + partition);
+        }
+        return expired.size();
+    }
+}
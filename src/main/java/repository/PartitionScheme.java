@@ -0,0 +1,64 @@
+package repository;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Time buckets of partitioned collections. The partition of a bucket is named after the keyword and
+ * the UTC start of the bucket, e.g. music_2026_10_18 for a day.
+ */
+public enum PartitionScheme {
+
+    /**
+     * Single collection named after the keyword
+     */
+    NONE(null, null),
+    HOUR("yyyy_MM_dd_HH", ChronoUnit.HOURS),
+    DAY("yyyy_MM_dd", ChronoUnit.DAYS),
+    MONTH("yyyy_MM", ChronoUnit.MONTHS);
+
+    private final DateTimeFormatter formatter;
+    private final ChronoUnit unit;
+
+    PartitionScheme(String pattern, ChronoUnit unit) {
+        this.formatter = pattern == null ? null : DateTimeFormatter.ofPattern(pattern).withZone(ZoneOffset.UTC);
+        this.unit = unit;
+    }
+
+    /**
+     * Returns the start of the bucket of time
+     */
+    public Instant start(Instant time) {
+        if (this == NONE)
+            return Instant.EPOCH;
+
+        ZonedDateTime utc = time.atZone(ZoneOffset.UTC);
+        if (this == MONTH)
+            return utc.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS).toInstant();
+        return utc.truncatedTo(unit).toInstant();
+    }
+
+    /**
+     * Returns the end of the bucket starting at start, which is the start of the next bucket
+     */
+    public Instant end(Instant start) {
+        if (this == NONE)
+            return Instant.MAX;
+        return start.atZone(ZoneOffset.UTC).plus(1, unit).toInstant();
+    }
+
+    /**
+     * Returns the name of a partition of keyword
+     * @param start start of the bucket
+     * @param sequence number of the partition in the bucket, a bucket rolls over to a new partition when full
+     */
+    public String partitionName(String keyword, Instant start, int sequence) {
+        if (this == NONE)
+            return keyword;
+        String name = keyword + "_" + formatter.format(start);
+        return sequence > 1 ? name + "-" + sequence : name;
+    }
+}
@@ -0,0 +1,361 @@
+package repository;
+
+import domain.TweetModel;
+import org.bson.Document;
+import utils.BloomFilter;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import static com.mongodb.client.model.Filters.eq;
+
+/**
+ * Stores the tweets of a keyword in time partitioned collections, see {@link PartitionScheme}.
+ * Tweets go to the partition of the current time bucket, and when it is full, to a new partition of the same
+ * bucket, so ingest is unbounded while each collection stays bounded. Partitions are recorded in a
+ * {@link PartitionCatalog}, and partitions older than the retention period are dropped on rollover.
+ *
+ * With {@link PartitionScheme#NONE}, tweets go to the collection named after the keyword and adding a tweet
+ * to a full collection throws {@link MaxCountReachedException}, as with a plain {@link MongoRepository}.
+ *
+ * With deduplication, a {@link BloomFilter} of the tweetIDs stored in the current time bucket is loaded at creation,
+ * and again when the bucket changes. A tweet the filter has never seen is new and is added without any query.
+ * A tweet it may have seen is looked up in the full partitions of the bucket, then added right away, so that the
+ * unique index on tweetID of the current partition rejects it if it is stored there.
+ */
+public class PartitionedRepository {
+
+    public static class Builder {
+
+        private final String database;
+        private final String host;
+        private final int port;
+
+        private PartitionScheme scheme = PartitionScheme.NONE;
+
+        private int maxCountPerPartition = 1500;
+
+        private int retentionDays = 0;
+
+        private double duplicatesFalsePositiveProbability = 0;
+
+        public Builder(String database, String host, int port) {
+            this.database = database;
+            this.host = host;
+            this.port = port;
+        }
+
+        public Builder setScheme(PartitionScheme scheme) {
+            this.scheme = scheme;
+            return this;
+        }
+
+        /**
+         * @param maxCountPerPartition max count of a partition, or of the collection with no partitioning
+         */
+        public Builder setMaxCountPerPartition(int maxCountPerPartition) {
+            this.maxCountPerPartition = maxCountPerPartition;
+            return this;
+        }
+
+        /**
+         * @param retentionDays days partitions are kept after their bucket ended, 0 to keep them all
+         */
+        public Builder setRetentionDays(int retentionDays) {
+            this.retentionDays = Math.max(0, retentionDays);
+            return this;
+        }
+
+        /**
+         * Rejects tweets whose tweetID is already stored. A Bloom filter of the stored tweetIDs tells which tweets
+         * are new, so only the others are checked against the collection.
+         * @param falsePositiveProbability probability that a new tweet is checked, 0 to store duplicates
+         */
+        public Builder setDeduplication(double falsePositiveProbability) {
+            this.duplicatesFalsePositiveProbability = falsePositiveProbability;
+            return this;
+        }
+
+        /**
+         * Creates the repository of keyword, with the settings of this builder
+         */
+        public PartitionedRepository create(String keyword) {
+            return new PartitionedRepository(keyword, this);
+        }
+    }
+
+    // End of Builder class -------------------------------------------------------------->
+
+    private final String keyword;
+    private final String database;
+    private final String host;
+    private final int port;
+    private final PartitionScheme scheme;
+    private final int maxCountPerPartition;
+    private final long retentionMillis;
+    private final PartitionCatalog catalog;
+
+    /**
+     * Filter of the tweetIDs added in the current time bucket, null without deduplication, replaced when the bucket
+     * changes, and the full partitions of the bucket, where the tweets the filter may have seen are looked up
+     */
+    private final double falsePositiveProbability;
+    private volatile BloomFilter seenTweetIDs;
+    private List<MongoRepository> closedPartitions = new ArrayList<>();
+
+    /**
+     * Duplicates of the closed partitions, and duplicates found in them
+     */
+    private final AtomicLong closedDuplicates = new AtomicLong();
+
+    private int writeBehindBatchSize = 1;
+    private long flushIntervalMillis = 0;
+    private Consumer<TweetModel> insertListener;
+
+    /**
+     * Adding tweets holds the read lock, rolling over to a new partition holds the write lock
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private volatile MongoRepository current;
+    private volatile long currentEndMillis;
+    private Instant currentStart;
+    private int sequence;
+
+    private PartitionedRepository(String keyword, Builder builder) {
+        this.keyword = keyword;
+        this.database = builder.database;
+        this.host = builder.host;
+        this.port = builder.port;
+        this.scheme = builder.scheme;
+        this.maxCountPerPartition = builder.maxCountPerPartition;
+        this.retentionMillis = TimeUnit.DAYS.toMillis(builder.retentionDays);
+        this.falsePositiveProbability = builder.duplicatesFalsePositiveProbability;
+
+        boolean deduplicate = builder.duplicatesFalsePositiveProbability > 0;
+        if (scheme == PartitionScheme.NONE) {
+            this.catalog = null;
+            open(Instant.EPOCH, 1, deduplicate);
+        } else {
+            this.catalog = PartitionCatalog.newInstance(keyword, database, host, port);
+            // Continues in the last partition of the current bucket, if any
+            Instant start = scheme.start(Instant.now());
+            open(start, Math.max(1, catalog.lastSequence(Date.from(start))), deduplicate);
+        }
+
+        this.seenTweetIDs = deduplicate ? loadTweetIDs() : null;
+    }
+
+    /**
+     * Buffers added items of this and next partitions, see {@link MongoRepository#enableWriteBehind(int, long)}
+     */
+    public void enableWriteBehind(int batchSize, long flushIntervalMillis) {
+        lock.writeLock().lock();
+        try {
+            this.writeBehindBatchSize = batchSize;
+            this.flushIntervalMillis = flushIntervalMillis;
+            current.enableWriteBehind(batchSize, flushIntervalMillis);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the listener called with each tweet inserted in this and next partitions,
+     * see {@link MongoRepository#setInsertListener(Consumer)}
+     */
+    public void setInsertListener(Consumer<TweetModel> listener) {
+        lock.writeLock().lock();
+        try {
+            this.insertListener = listener;
+            current.setInsertListener(listener);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a tweet to the current partition, rolling over to a new partition if the time bucket has ended
+     * or the partition is full
+     * @throws MaxCountReachedException only with no partitioning, when the collection is full
+     */
+    public void addItem(TweetModel tweet) throws MaxCountReachedException {
+        BloomFilter filter = null;
+        boolean isNew = true;
+
+        while (true) {
+            lock.readLock().lock();
+            MongoRepository repository = current;
+            try {
+                // Puts the tweet in the filter of the current bucket, again if the bucket changed since
+                if (seenTweetIDs != filter) {
+                    filter = seenTweetIDs;
+                    isNew = filter.put(tweet.getTweetID());
+                }
+
+                if (System.currentTimeMillis() < currentEndMillis) {
+                    if (isNew)
+                        repository.addItem(tweet);
+                    else if (storedInClosedPartition(tweet.getTweetID()))
+                        closedDuplicates.incrementAndGet();
+                    else
+                        repository.addItemIfAbsent(tweet);
+                    return;
+                }
+            } catch (MaxCountReachedException e) {
+                if (scheme == PartitionScheme.NONE)
+                    throw e;
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            rollOver(repository);
+        }
+    }
+
+    /**
+     * Returns true if a full partition of the current bucket stores a tweet with tweetID
+     */
+    private boolean storedInClosedPartition(long tweetID) {
+        for (MongoRepository partition : closedPartitions)
+            if (partition.getCollectionCount(eq("tweetID", tweetID)) > 0)
+                return true;
+        return false;
+    }
+
+    /**
+     * Returns the name of the current partition
+     */
+    public String getCollectionName() {
+        return current.getCollectionName();
+    }
+
+    /**
+     * Returns the items count of the current partition
+     */
+    public long getCollectionCount() {
+        return current.getCollectionCount();
+    }
+
+    public long getMaxCollectionCount() {
+        return current.getMaxCollectionCount();
+    }
+
+    public String getKeyword() {
+        return keyword;
+    }
+
+    /**
+     * Returns the number of duplicate tweets which were not added
+     */
+    public long getDuplicateCount() {
+        return closedDuplicates.get() + current.getDuplicateCount();
+    }
+
+    public void printCollection(boolean s) {
+        current.printCollection(s);
+    }
+
+    /**
+     * Flushes the current partition, see {@link MongoRepository#disconnect()}
+     */
+    public void disconnect() {
+        lock.writeLock().lock();
+        try {
+            current.disconnect();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Closes the partition previous and opens the next one, unless another thread already did
+     */
+    private void rollOver(MongoRepository previous) {
+        lock.writeLock().lock();
+        try {
+            if (current != previous)
+                return;
+
+            Instant start = scheme.start(Instant.now());
+            boolean sameBucket = start.equals(currentStart);
+            previous.disconnect();
+            closedDuplicates.addAndGet(previous.getDuplicateCount());
+
+            if (sameBucket) {
+                if (seenTweetIDs != null)
+                    closedPartitions.add(MongoRepository.newInstance(previous.getCollectionName(), database, host, port));
+                open(start, sequence + 1, seenTweetIDs != null);
+            } else {
+                open(start, Math.max(1, catalog.lastSequence(Date.from(start))), seenTweetIDs != null);
+                // The filter and the full partitions are those of the new bucket
+                if (seenTweetIDs != null)
+                    seenTweetIDs = loadTweetIDs();
+                if (retentionMillis > 0)
+                    catalog.dropBefore(new Date(System.currentTimeMillis() - retentionMillis));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Makes the partition of number sequence in the bucket starting at start the current one
+     * @param uniqueTweetIDs whether to create the unique index on tweetID which rejects duplicates
+     */
+    private void open(Instant start, int sequence, boolean uniqueTweetIDs) {
+        String name = scheme.partitionName(keyword, start, sequence);
+        Instant end = scheme.end(start);
+
+        MongoRepository repository = MongoRepository.newInstance(name, database, host, port, maxCountPerPartition);
+        if (uniqueTweetIDs)
+            repository.createTweetIdIndex();
+        repository.enableWriteBehind(writeBehindBatchSize, flushIntervalMillis);
+        repository.setInsertListener(insertListener);
+        if (catalog != null)
+            catalog.register(name, Date.from(start), Date.from(end), sequence);
+
+        this.currentStart = start;
+        this.currentEndMillis = end == Instant.MAX ? Long.MAX_VALUE : end.toEpochMilli();
+        this.sequence = sequence;
+        this.current = repository;
+    }
+
+    /**
+     * Creates the filter of the tweetIDs stored in the partitions of the current time bucket, and keeps the full ones
+     * as the closed partitions. A tweet repeated after the bucket rolls over is stored again, in the partition of
+     * the new bucket.
+     */
+    private BloomFilter loadTweetIDs() {
+        List<MongoRepository> partitions = new ArrayList<>();
+        List<MongoRepository> closed = new ArrayList<>();
+        partitions.add(current);
+        if (catalog != null) {
+            for (String name : catalog.find(Date.from(currentStart), null))
+                if (!name.equals(current.getCollectionName()))
+                    closed.add(MongoRepository.newInstance(name, database, host, port));
+            partitions.addAll(closed);
+        }
+        this.closedPartitions = closed;
+
+        long stored = 0;
+        for (MongoRepository partition : partitions)
+            stored += partition.getCollectionCount(new Document());
+
+        // Room for twice the stored tweets before the filter has to grow
+        BloomFilter filter = new BloomFilter(Math.max(100000, 2 * stored), falsePositiveProbability);
+        for (MongoRepository partition : partitions)
+            partition.forEachTweetID(filter::put);
+
+        System.out.printf("Loaded %d tweetIDs of %s in the duplicates filter, %d KB%n",
+                filter.size(), keyword, filter.getBitsSize() / 1024);
+        return filter;
+    }
+}
@@ -0,0 +1,34 @@
+package repository;
+
+/**
+ * Stored fields of {@link domain.TweetModel}, used to project queries on the fields they need
+ */
+public enum TweetField {
+
+    TWEET_ID("tweetID"),
+    USER_ID("userID"),
+    USER_FOLLOWERS_COUNT("userFollowersCount"),
+    USER_FRIENDS_COUNT("userFriendsCount"),
+    TWEET_TEXT("tweetText"),
+    TRANSFORMED_TWEET_TEXT("transformedTweetText"),
+    LABEL("label"),
+    POSITIVE_PROBABILITY("positiveProbability"),
+    NEGATIVE_PROBABILITY("negativeProbability"),
+    NEUTRAL_PROBABILITY("neutralProbability"),
+    CLUSTER_ID("clusterID"),
+    WORDS_COUNTED("wordsCounted"),
+    FINGERPRINT("fingerprint");
+
+    private final String fieldName;
+
+    TweetField(String fieldName) {
+        this.fieldName = fieldName;
+    }
+
+    /**
+     * Returns the name of the field in mongo documents
+     */
+    public String getFieldName() {
+        return fieldName;
+    }
+}
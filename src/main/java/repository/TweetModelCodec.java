@@ -0,0 +1,207 @@
+package repository;
+
+import domain.TweetModel;
+import org.bson.BsonInvalidOperationException;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Codec of {@link TweetModel}, which reads and writes the fields directly instead of through reflection.
+ * Documents have the same layout as with the automatic POJO codec: null strings are not written and
+ * unknown fields, such as _id, are skipped when decoding. The clusterID of a tweet which is not in a
+ * near-duplicate cluster, 0, the wordsCounted flag of a tweet whose words are not counted and the fingerprint
+ * of a tweet which has none, 0, are not written either.
+ *
+ * A codec created with a subset of the fields decodes only these fields and skips the others,
+ * so the other fields of decoded tweets keep their default values.
+ */
+public class TweetModelCodec implements Codec<TweetModel> {
+
+    /**
+     * Decoded fields
+     */
+    private final Set<TweetField> fields;
+
+    /**
+     * Codec decoding all fields
+     */
+    public TweetModelCodec() {
+        this(EnumSet.allOf(TweetField.class));
+    }
+
+    /**
+     * Codec decoding only the given fields
+     */
+    public TweetModelCodec(Set<TweetField> fields) {
+        this.fields = EnumSet.copyOf(fields);
+    }
+
+    @Override
+    public void encode(BsonWriter writer, TweetModel tweet, EncoderContext encoderContext) {
+        writer.writeStartDocument();
+        writer.writeInt64("tweetID", tweet.getTweetID());
+        writer.writeInt64("userID", tweet.getUserID());
+        writer.writeInt32("userFollowersCount", tweet.getUserFollowersCount());
+        writer.writeInt32("userFriendsCount", tweet.getUserFriendsCount());
+        writeString(writer, "tweetText", tweet.getTweetText());
+        writeString(writer, "transformedTweetText", tweet.getTransformedTweetText());
+        writeString(writer, "label", tweet.getLabel());
+        writer.writeDouble("positiveProbability", tweet.getPositiveProbability());
+        writer.writeDouble("negativeProbability", tweet.getNegativeProbability());
+        writer.writeDouble("neutralProbability", tweet.getNeutralProbability());
+        if (tweet.getClusterID() != 0)
+            writer.writeInt64("clusterID", tweet.getClusterID());
+        if (tweet.isWordsCounted())
+            writer.writeBoolean("wordsCounted", true);
+        if (tweet.getFingerprint() != 0)
+            writer.writeInt64("fingerprint", tweet.getFingerprint());
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public TweetModel decode(BsonReader reader, DecoderContext decoderContext) {
+        TweetModel tweet = new TweetModel();
+
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            TweetField field = fieldOf(reader.readName());
+            if (field == null || !fields.contains(field)) {
+                reader.skipValue();
+                continue;
+            }
+
+            switch (field) {
+                case TWEET_ID:
+                    tweet.setTweetID(readLong(reader));
+                    break;
+                case USER_ID:
+                    tweet.setUserID(readLong(reader));
+                    break;
+                case USER_FOLLOWERS_COUNT:
+                    tweet.setUserFollowersCount((int) readLong(reader));
+                    break;
+                case USER_FRIENDS_COUNT:
+                    tweet.setUserFriendsCount((int) readLong(reader));
+                    break;
+                case TWEET_TEXT:
+                    tweet.setTweetText(readString(reader));
+                    break;
+                case TRANSFORMED_TWEET_TEXT:
+                    tweet.setTransformedTweetText(readString(reader));
+                    break;
+                case LABEL:
+                    tweet.setLabel(readString(reader));
+                    break;
+                case POSITIVE_PROBABILITY:
+                    tweet.setPositiveProbability(readDouble(reader));
+                    break;
+                case NEGATIVE_PROBABILITY:
+                    tweet.setNegativeProbability(readDouble(reader));
+                    break;
+                case NEUTRAL_PROBABILITY:
+                    tweet.setNeutralProbability(readDouble(reader));
+                    break;
+                case CLUSTER_ID:
+                    tweet.setClusterID(readLong(reader));
+                    break;
+                case WORDS_COUNTED:
+                    tweet.setWordsCounted(reader.readBoolean());
+                    break;
+                case FINGERPRINT:
+                    tweet.setFingerprint(readLong(reader));
+                    break;
+            }
+        }
+        reader.readEndDocument();
+
+        return tweet;
+    }
+
+    @Override
+    public Class<TweetModel> getEncoderClass() {
+        return TweetModel.class;
+    }
+
+    /**
+     * Returns the field of a document field name, null if it is not a field of TweetModel
+     */
+    private static TweetField fieldOf(String name) {
+        switch (name) {
+            case "tweetID": return TweetField.TWEET_ID;
+            case "userID": return TweetField.USER_ID;
+            case "userFollowersCount": return TweetField.USER_FOLLOWERS_COUNT;
+            case "userFriendsCount": return TweetField.USER_FRIENDS_COUNT;
+            case "tweetText": return TweetField.TWEET_TEXT;
+            case "transformedTweetText": return TweetField.TRANSFORMED_TWEET_TEXT;
+            case "label": return TweetField.LABEL;
+            case "positiveProbability": return TweetField.POSITIVE_PROBABILITY;
+            case "negativeProbability": return TweetField.NEGATIVE_PROBABILITY;
+            case "neutralProbability": return TweetField.NEUTRAL_PROBABILITY;
+            case "clusterID": return TweetField.CLUSTER_ID;
+            case "wordsCounted": return TweetField.WORDS_COUNTED;
+            case "fingerprint": return TweetField.FINGERPRINT;
+            default: return null;
+        }
+    }
+
+    private static void writeString(BsonWriter writer, String name, String value) {
+        if (value != null)
+            writer.writeString(name, value);
+    }
+
+    /**
+     * Reads a string, or null for a null value
+     */
+    private static String readString(BsonReader reader) {
+        if (reader.getCurrentBsonType() == BsonType.NULL) {
+            reader.readNull();
+            return null;
+        }
+        return reader.readString();
+    }
+
+    /**
+     * Reads an integer stored as int32, int64 or double, 0 for a null value
+     */
+    private static long readLong(BsonReader reader) {
+        switch (reader.getCurrentBsonType()) {
+            case INT32:
+                return reader.readInt32();
+            case INT64:
+                return reader.readInt64();
+            case DOUBLE:
+                return (long) reader.readDouble();
+            case NULL:
+                reader.readNull();
+                return 0;
+            default:
+                throw new BsonInvalidOperationException("Expected a number, found " + reader.getCurrentBsonType());
+        }
+    }
+
+    /**
+     * Reads a number stored as double, int32 or int64, 0 for a null value
+     */
+    private static double readDouble(BsonReader reader) {
+        switch (reader.getCurrentBsonType()) {
+            case DOUBLE:
+                return reader.readDouble();
+            case INT32:
+                return reader.readInt32();
+            case INT64:
+                return reader.readInt64();
+            case NULL:
+                reader.readNull();
+                return 0;
+            default:
+                throw new BsonInvalidOperationException("Expected a number, found " + reader.getCurrentBsonType());
+        }
+    }
+}
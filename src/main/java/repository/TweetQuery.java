@@ -0,0 +1,189 @@
+package repository;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Projections;
+import domain.TweetModel;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static org.bson.codecs.configuration.CodecRegistries.fromCodecs;
+import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
+
+/**
+ * Query of the tweets of a collection. Only the projected fields are sent by the server and decoded by
+ * a {@link TweetModelCodec} of these fields, the other fields of the returned tweets keep their default values.
+ * Create instances with {@link MongoRepository#newQuery()}.
+ */
+public class TweetQuery implements MongoQuery {
+
+    public static class Builder {
+
+        private final MongoCollection<TweetModel> collection;
+
+        private Bson filter = new Document();
+
+        /**
+         * Projected fields, null for all of them
+         */
+        private TweetField[] fields;
+
+        private Bson sort;
+
+        private int limit = 0;
+
+        private int batchSize = 0;
+
+        private boolean noCursorTimeout = false;
+
+        Builder(MongoCollection<TweetModel> collection) {
+            this.collection = collection;
+        }
+
+        public Builder setFilter(Bson filter) {
+            this.filter = filter;
+            return this;
+        }
+
+        public Builder setFields(TweetField... fields) {
+            this.fields = fields;
+            return this;
+        }
+
+        public Builder setSort(Bson sort) {
+            this.sort = sort;
+            return this;
+        }
+
+        /**
+         * @param limit max number of results, 0 for no limit
+         */
+        public Builder setLimit(int limit) {
+            this.limit = limit;
+            return this;
+        }
+
+        /**
+         * @param batchSize number of results of each server round-trip, 0 for the server default
+         */
+        public Builder setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Keeps the cursor open on the server while results are consumed slower than the server timeout
+         */
+        public Builder setNoCursorTimeout(boolean noCursorTimeout) {
+            this.noCursorTimeout = noCursorTimeout;
+            return this;
+        }
+
+        public TweetQuery create() {
+            return new TweetQuery(this);
+        }
+    }
+
+    // End of Builder class -------------------------------------------------------------->
+
+    private final MongoCollection<TweetModel> collection;
+    private final Bson filter;
+    private final Bson projection;
+    private final Bson sort;
+    private final int limit;
+    private final int batchSize;
+    private final boolean noCursorTimeout;
+
+    private TweetQuery(Builder builder) {
+        this.collection = builder.fields == null || builder.fields.length == 0 ? builder.collection :
+                builder.collection.withCodecRegistry(fromRegistries(
+                        fromCodecs(new TweetModelCodec(EnumSet.copyOf(Arrays.asList(builder.fields)))),
+                        builder.collection.getCodecRegistry()));
+        this.filter = builder.filter;
+        this.projection = builder.fields == null || builder.fields.length == 0 ? null : Projections.fields(
+                Projections.excludeId(),
+                Projections.include(Arrays.stream(builder.fields).map(TweetField::getFieldName).collect(Collectors.toList())));
+        this.sort = builder.sort;
+        this.limit = builder.limit;
+        this.batchSize = builder.batchSize;
+        this.noCursorTimeout = builder.noCursorTimeout;
+    }
+
+    /**
+     * Returns the find operation of this query, for callers which need the driver's iterable
+     */
+    public FindIterable<TweetModel> iterable() {
+        FindIterable<TweetModel> iterable = collection.find(filter)
+                .projection(projection)
+                .sort(sort)
+                .limit(limit)
+                .noCursorTimeout(noCursorTimeout);
+        if (batchSize > 0)
+            iterable.batchSize(batchSize);
+        return iterable;
+    }
+
+    /**
+     * The query is sent when the first result is needed, not when this method is called
+     */
+    @Override
+    public Stream<TweetModel> stream() {
+        CursorSpliterator spliterator = new CursorSpliterator();
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+    }
+
+    /**
+     * Spliterator which opens the cursor of the query on first advance
+     */
+    private class CursorSpliterator implements Spliterator<TweetModel> {
+
+        private MongoCursor<TweetModel> cursor;
+        private boolean closed = false;
+
+        @Override
+        public boolean tryAdvance(Consumer<? super TweetModel> action) {
+            if (closed)
+                return false;
+            if (cursor == null)
+                cursor = iterable().iterator();
+            if (!cursor.hasNext()) {
+                close();
+                return false;
+            }
+            action.accept(cursor.next());
+            return true;
+        }
+
+        @Override
+        public Spliterator<TweetModel> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+
+        void close() {
+            closed = true;
+            if (cursor != null) {
+                cursor.close();
+                cursor = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package sentimentAnalysis;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Sentiment scorer which caches the scores of another scorer, keyed by a 64 bit hash of the scored text.
+ * Scores are looked up in an in-memory LRU tier first and then in an optional on-disk tier, which is an
+ * append-only file of fixed size records that survives between runs. Only the index of the file,
+ * hash to record offset, is kept in memory.
+ *
+ * Texts submitted again while their first request is still in flight share that request.
+ */
+public class CachingSentimentScorer implements SentimentScorer {
+
+    /**
+     * Labels of the sentiment web api, stored on disk by their index
+     */
+    private static final String[] LABELS = {"pos", "neg", "neutral"};
+
+    /**
+     * Disk record: hash, label index, positive, negative and neutral probability
+     */
+    private static final int RECORD_SIZE = Long.BYTES + 1 + 3 * Double.BYTES;
+
+    private final SentimentScorer scorer;
+    private final Map<Long, SentimentScore> memory;
+    private final Map<Long, Future<SentimentScore>> inFlight = new HashMap<>();
+    private final MessageDigest digest;
+
+    /**
+     * Disk tier, null when the cache lives only in memory
+     */
+    private final FileChannel disk;
+    private final Map<Long, Long> diskIndex = new HashMap<>();
+    private long diskSize;
+
+    private long memoryHits;
+    private long diskHits;
+    private long misses;
+
+    /**
+     * @param scorer scorer of texts which are not in cache
+     * @param memoryEntries max number of scores kept in memory
+     * @param cacheFile file of the disk tier, created if it does not exist, or null for a memory only cache
+     * @throws IOException when cache file cannot be opened or read
+     */
+    public CachingSentimentScorer(SentimentScorer scorer, int memoryEntries, Path cacheFile) throws IOException {
+        this.scorer = scorer;
+        this.memory = new LinkedHashMap<Long, SentimentScore>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, SentimentScore> eldest) {
+                return size() > memoryEntries;
+            }
+        };
+
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        if (cacheFile != null) {
+            this.disk = FileChannel.open(cacheFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            loadDiskIndex();
+        } else {
+            this.disk = null;
+        }
+    }
+
+    /**
+     * Reads the hashes of all disk records. A partially written last record is discarded.
+     */
+    private void loadDiskIndex() throws IOException {
+        diskSize = disk.size() - disk.size() % RECORD_SIZE;
+        disk.truncate(diskSize);
+
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 1024);
+        long position = 0;
+        while (position < diskSize) {
+            buffer.clear();
+            disk.read(buffer, position);
+            buffer.flip();
+            while (buffer.remaining() >= RECORD_SIZE) {
+                diskIndex.put(buffer.getLong(), position);
+                buffer.position(buffer.position() + RECORD_SIZE - Long.BYTES);
+                position += RECORD_SIZE;
+            }
+        }
+    }
+
+    @Override
+    public synchronized Future<SentimentScore> submit(String text) {
+
+        long key = hash(text);
+
+        SentimentScore score = memory.get(key);
+        if (score != null) {
+            memoryHits++;
+            return CompletableFuture.completedFuture(score);
+        }
+
+        score = readFromDisk(key);
+        if (score != null) {
+            diskHits++;
+            memory.put(key, score);
+            return CompletableFuture.completedFuture(score);
+        }
+
+        misses++;
+        Future<SentimentScore> future = inFlight.get(key);
+        if (future == null) {
+            future = new CachingFuture(key, scorer.submit(text));
+            inFlight.put(key, future);
+        }
+        return future;
+    }
+
+    @Override
+    public int getThreads() {
+        return scorer.getThreads();
+    }
+
+    /**
+     * Shuts down the cached scorer and closes the disk tier
+     */
+    @Override
+    public synchronized void shutdown() {
+        scorer.shutdown();
+        if (disk != null) {
+            try {
+                disk.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Returns hit and miss counters of the cache
+     */
+    public synchronized String getStatistics() {
+        long lookups = memoryHits + diskHits + misses;
+        return String.format("Sentiment cache: %d lookups, %d memory hits, %d disk hits, %d misses (%.1f%% hit rate)",
+                lookups, memoryHits, diskHits, misses,
+                lookups == 0 ? 0.0 : (memoryHits + diskHits) * 100.0 / lookups);
+    }
+
+    /**
+     * Stores score of a completed request in both tiers
+     */
+    private synchronized void store(long key, SentimentScore score) {
+        inFlight.remove(key);
+        memory.put(key, score);
+        writeToDisk(key, score);
+    }
+
+    /**
+     * Forgets a failed request, so that the text is scored again when submitted again
+     */
+    private synchronized void forget(long key) {
+        inFlight.remove(key);
+    }
+
+    private SentimentScore readFromDisk(long key) {
+        Long position = diskIndex.get(key);
+        if (position == null)
+            return null;
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        try {
+            disk.read(record, position);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        record.flip();
+        record.getLong();
+
+        return new SentimentScore(LABELS[record.get()], record.getDouble(), record.getDouble(), record.getDouble());
+    }
+
+    private void writeToDisk(long key, SentimentScore score) {
+        if (disk == null || diskIndex.containsKey(key))
+            return;
+
+        // Labels unknown to the web api are kept only in memory
+        int label = -1;
+        for (int i = 0; i < LABELS.length; i++)
+            if (LABELS[i].equals(score.getLabel()))
+                label = i;
+        if (label < 0)
+            return;
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.putLong(key)
+                .put((byte) label)
+                .putDouble(score.getPositiveProbability())
+                .putDouble(score.getNegativeProbability())
+                .putDouble(score.getNeutralProbability());
+        record.flip();
+
+        try {
+            while (record.hasRemaining())
+                disk.write(record, diskSize + record.position());
+            diskIndex.put(key, diskSize);
+            diskSize += RECORD_SIZE;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * First 8 bytes of the SHA-256 digest of text
+     */
+    private long hash(String text) {
+        byte[] d = digest.digest(text.getBytes(StandardCharsets.UTF_8));
+        return ByteBuffer.wrap(d).getLong();
+    }
+
+    /**
+     * Future of the cached scorer, which stores its score in cache when completed
+     */
+    private class CachingFuture implements Future<SentimentScore> {
+
+        private final long key;
+        private final Future<SentimentScore> future;
+
+        CachingFuture(long key, Future<SentimentScore> future) {
+            this.key = key;
+            this.future = future;
+        }
+
+        @Override
+        public SentimentScore get() throws InterruptedException, ExecutionException {
+            try {
+                return cache(future::get);
+            } catch (TimeoutException e) {
+                throw new ExecutionException(e);
+            }
+        }
+
+        @Override
+        public SentimentScore get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return cache(() -> future.get(timeout, unit));
+        }
+
+        private SentimentScore cache(Callable<SentimentScore> get) throws InterruptedException, ExecutionException, TimeoutException {
+            try {
+                SentimentScore score = get.call();
+                store(key, score);
+                return score;
+            } catch (ExecutionException e) {
+                forget(key);
+                throw e;
+            } catch (InterruptedException | TimeoutException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new ExecutionException(e);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return future.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return future.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return future.isDone();
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package sentimentAnalysis;
+
+import metrics.Metrics;
+import metrics.Stage;
+import org.jfree.chart.ChartUtils;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.plot.CategoryPlot;
+import org.jfree.chart.plot.PiePlot;
+import org.jfree.chart.plot.Plot;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.data.category.CategoryDataset;
+import org.jfree.data.general.PieDataset;
+import org.jfree.data.xy.XYDataset;
+import org.jfree.graphics2d.svg.SVGGraphics2D;
+import org.jfree.graphics2d.svg.SVGUtils;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Saves charts on a bounded pool of threads, so that independent charts are rendered in parallel.
+ * Each chart is saved as PNG, SVG and/or the CSV of its dataset, in files named after its title.
+ *
+ * The hash of each chart's title, size and dataset is kept in a file of the charts directory. A chart whose hash
+ * has not changed since it was last saved, and whose files all exist, is not rendered again.
+ */
+public class ChartExportService {
+
+    public enum Format {
+        PNG, SVG, CSV;
+
+        String extension() {
+            return "." + name().toLowerCase();
+        }
+    }
+
+    /**
+     * File of the charts directory keeping the hashes of the saved charts
+     */
+    private static final String HASHES_FILE = ".chart-hashes";
+
+    private final Path directory;
+    private final Set<Format> formats;
+    private final int width;
+    private final int height;
+    private final ExecutorService executor;
+
+    private final Properties hashes = new Properties();
+    private final List<Future<Boolean>> pending = new ArrayList<>();
+    private int rendered = 0;
+    private int unchanged = 0;
+
+    /**
+     * Service saving PNG charts of default size, on as many threads as processors
+     */
+    public ChartExportService(Path directory) {
+        this(directory, Runtime.getRuntime().availableProcessors(), EnumSet.of(Format.PNG));
+    }
+
+    /**
+     * Service saving charts of default size
+     * @param threads max number of charts rendered at the same time
+     * @param formats saved formats of each chart
+     */
+    public ChartExportService(Path directory, int threads, Set<Format> formats) {
+        this(directory, threads, formats, SentimentAnalysis.CHART_WIDTH, SentimentAnalysis.CHART_HEIGHT);
+    }
+
+    /**
+     * @param threads max number of charts rendered at the same time
+     * @param formats saved formats of each chart
+     */
+    public ChartExportService(Path directory, int threads, Set<Format> formats, int width, int height) {
+
+        // Rendering needs no display
+        if (System.getProperty("java.awt.headless") == null)
+            System.setProperty("java.awt.headless", "true");
+
+        this.directory = directory;
+        this.formats = EnumSet.copyOf(formats);
+        this.width = width;
+        this.height = height;
+
+        // Charts submitted while all threads are busy and the queue is full are rendered by the caller
+        int poolSize = Math.max(1, threads);
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(poolSize * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+
+        Path hashesFile = directory.resolve(HASHES_FILE);
+        if (Files.exists(hashesFile)) {
+            try (InputStream in = Files.newInputStream(hashesFile)) {
+                hashes.load(in);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Schedules chart to be saved in every format
+     * @return future which tells whether chart was rendered, false when it was unchanged
+     */
+    public synchronized Future<Boolean> export(JFreeChart chart) {
+        Future<Boolean> future = executor.submit(() -> save(chart));
+        pending.add(future);
+        return future;
+    }
+
+    /**
+     * Waits until all scheduled charts have been saved and stores the hashes of the saved charts
+     */
+    public void awaitCompletion() {
+        List<Future<Boolean>> futures;
+        synchronized (this) {
+            futures = new ArrayList<>(pending);
+            pending.clear();
+        }
+        if (futures.isEmpty())
+            return;
+
+        for (Future<Boolean> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                e.getCause().printStackTrace();
+            }
+        }
+
+        synchronized (this) {
+            try (OutputStream out = Files.newOutputStream(directory.resolve(HASHES_FILE))) {
+                hashes.store(out, "Hashes of the saved charts");
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            System.out.printf("\nCharts saved in %s: %d rendered, %d unchanged\n", directory, rendered, unchanged);
+            rendered = 0;
+            unchanged = 0;
+        }
+    }
+
+    /**
+     * Waits for the scheduled charts and stops the threads
+     */
+    public void shutdown() {
+        awaitCompletion();
+        executor.shutdown();
+    }
+
+    /**
+     * Saves chart in every format, unless it is unchanged
+     * @return true if chart was rendered
+     */
+    private boolean save(JFreeChart chart) throws IOException {
+        String name = chart.getTitle().getText().replace(" ", "_");
+        String csv = toCsv(chart);
+        String hash = hash(chart.getTitle().getText() + "\n" + width + "x" + height + "\n" + csv);
+
+        boolean filesExist = formats.stream().allMatch(format -> Files.exists(directory.resolve(name + format.extension())));
+        synchronized (this) {
+            if (filesExist && hash.equals(hashes.getProperty(name))) {
+                unchanged++;
+                return false;
+            }
+        }
+
+        long start = Metrics.start();
+        for (Format format : formats) {
+            Path file = directory.resolve(name + format.extension());
+            switch (format) {
+                case PNG:
+                    ChartUtils.saveChartAsPNG(file.toFile(), chart, width, height);
+                    break;
+                case SVG:
+                    SVGGraphics2D graphics = new SVGGraphics2D(width, height);
+                    chart.draw(graphics, new Rectangle(width, height));
+                    SVGUtils.writeToSVG(file.toFile(), graphics.getSVGElement());
+                    break;
+                case CSV:
+                    Files.write(file, csv.getBytes(StandardCharsets.UTF_8));
+                    break;
+            }
+        }
+        Metrics.stop(Stage.CHART_RENDER, start, formats.size());
+
+        synchronized (this) {
+            hashes.setProperty(name, hash);
+            rendered++;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the dataset of chart's plot as CSV: series, x and y of XY plots, row, column and value of category
+     * plots, key and value of pie plots
+     */
+    static String toCsv(JFreeChart chart) {
+        StringBuilder csv = new StringBuilder();
+        Plot plot = chart.getPlot();
+
+        if (plot instanceof XYPlot) {
+            XYDataset dataset = ((XYPlot) plot).getDataset();
+            csv.append("series,x,y\n");
+            for (int s = 0; dataset != null && s < dataset.getSeriesCount(); s++)
+                for (int i = 0; i < dataset.getItemCount(s); i++)
+                    csv.append(escape(dataset.getSeriesKey(s))).append(',')
+                            .append(dataset.getXValue(s, i)).append(',')
+                            .append(dataset.getYValue(s, i)).append('\n');
+        } else if (plot instanceof CategoryPlot) {
+            CategoryDataset dataset = ((CategoryPlot) plot).getDataset();
+            csv.append("row,column,value\n");
+            for (int r = 0; dataset != null && r < dataset.getRowCount(); r++)
+                for (int c = 0; c < dataset.getColumnCount(); c++)
+                    csv.append(escape(dataset.getRowKey(r))).append(',')
+                            .append(escape(dataset.getColumnKey(c))).append(',')
+                            .append(dataset.getValue(r, c)).append('\n');
+        } else if (plot instanceof PiePlot) {
+            PieDataset dataset = ((PiePlot) plot).getDataset();
+            csv.append("key,value\n");
+            for (int i = 0; dataset != null && i < dataset.getItemCount(); i++)
+                csv.append(escape(dataset.getKey(i))).append(',')
+                        .append(dataset.getValue(i)).append('\n');
+        }
+
+        return csv.toString();
+    }
+
+    private static String escape(Object value) {
+        String s = String.valueOf(value);
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0)
+            return s;
+        return '"' + s.replace("\"", "\"\"") + '"';
+    }
+
+    private static String hash(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest)
+                hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package sentimentAnalysis;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+/**
+ * In-process sentiment scorer based on a word valence lexicon, such as AFINN.
+ * The lexicon is loaded once in an open addressing table of 64 bit word hashes and float valences,
+ * so scoring a text needs no network, no allocation per word and no lock.
+ *
+ * Lexicon file format: one entry per line, word followed by whitespace and an integer or decimal valence,
+ * positive for positive sentiment. Lines starting with '#' and entries of more than one word are ignored,
+ * since transformed tweet texts are scored word by word.
+ *
+ * Probabilities follow the text-processing.com convention: positive and negative probabilities sum to 1
+ * and neutral probability is independent of them.
+ */
+public class LexiconSentimentScorer implements SentimentScorer {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Hash value which marks an empty slot of the table
+     */
+    private static final long EMPTY = 0L;
+
+    /**
+     * Open addressing table of word hashes and their valences
+     */
+    private final long[] hashes;
+    private final float[] valences;
+    private final int mask;
+
+    /**
+     * Number of words in lexicon
+     */
+    private final int size;
+
+    private LexiconSentimentScorer(long[] hashes, float[] valences, int size) {
+        this.hashes = hashes;
+        this.valences = valences;
+        this.mask = hashes.length - 1;
+        this.size = size;
+    }
+
+    /**
+     * Loads lexicon from file
+     * @throws IOException when file cannot be read or a line has no valid valence
+     */
+    public static LexiconSentimentScorer load(Path lexiconFile) throws IOException {
+
+        // First pass counts the entries, so that the table is allocated once
+        int entries = 0;
+        try (BufferedReader in = Files.newBufferedReader(lexiconFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null)
+                if (!line.trim().isEmpty() && !line.startsWith("#"))
+                    entries++;
+        }
+
+        int capacity = Integer.highestOneBit(Math.max(entries, 1) * 2 - 1) << 1;
+        long[] hashes = new long[capacity];
+        float[] valences = new float[capacity];
+        int size = 0;
+
+        try (BufferedReader in = Files.newBufferedReader(lexiconFile, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+
+                String[] fields = line.split("\\s+");
+                if (fields.length != 2)
+                    continue;
+
+                float valence;
+                try {
+                    valence = Float.parseFloat(fields[1]);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid valence at line " + lineNumber + " of " + lexiconFile + ": " + line);
+                }
+
+                String word = fields[0].toLowerCase();
+                if (put(hashes, valences, hash(word, 0, word.length()), valence))
+                    size++;
+            }
+        }
+
+        return new LexiconSentimentScorer(hashes, valences, size);
+    }
+
+    /**
+     * Returns number of words in lexicon
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Scores text synchronously
+     */
+    public SentimentScore score(String text) {
+
+        double positive = 0;
+        double negative = 0;
+
+        // Look up every space separated word, without creating substrings
+        int length = text.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean separator = i == length || Character.isWhitespace(text.charAt(i));
+            if (!separator) {
+                if (start < 0)
+                    start = i;
+            } else if (start >= 0) {
+                float valence = get(hash(text, start, i));
+                if (valence > 0)
+                    positive += valence;
+                else
+                    negative -= valence;
+                start = -1;
+            }
+        }
+
+        // Polarity is a logistic function of the valences sum, subjectivity grows with the valences magnitude
+        double positiveProbability = 1.0 / (1.0 + Math.exp(negative - positive));
+        double neutralProbability = 1.0 / (1.0 + positive + negative);
+
+        String label;
+        if (neutralProbability > 0.5)
+            label = "neutral";
+        else
+            label = positiveProbability >= 0.5 ? "pos" : "neg";
+
+        return new SentimentScore(label, positiveProbability, 1.0 - positiveProbability, neutralProbability);
+    }
+
+    @Override
+    public Future<SentimentScore> submit(String text) {
+        return CompletableFuture.completedFuture(score(text));
+    }
+
+    /**
+     * Scoring runs on the caller thread
+     */
+    @Override
+    public int getThreads() {
+        return 1;
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    /**
+     * Returns valence of word with the given hash, 0 if word is not in lexicon
+     */
+    private float get(long hash) {
+        int slot = (int) hash & mask;
+        while (hashes[slot] != EMPTY) {
+            if (hashes[slot] == hash)
+                return valences[slot];
+            slot = (slot + 1) & mask;
+        }
+        return 0f;
+    }
+
+    /**
+     * Puts valence in table, replacing the valence of a duplicate word
+     * @return true if word was not already in table
+     */
+    private static boolean put(long[] hashes, float[] valences, long hash, float valence) {
+        int mask = hashes.length - 1;
+        int slot = (int) hash & mask;
+        while (hashes[slot] != EMPTY) {
+            if (hashes[slot] == hash) {
+                valences[slot] = valence;
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        hashes[slot] = hash;
+        valences[slot] = valence;
+        return true;
+    }
+
+    /**
+     * FNV-1a hash of the lower case characters of s between start (inclusive) and end (exclusive)
+     */
+    private static long hash(CharSequence s, int start, int end) {
+        long h = FNV_OFFSET_BASIS;
+        for (int i = start; i < end; i++) {
+            h ^= Character.toLowerCase(s.charAt(i));
+            h *= FNV_PRIME;
+        }
+        // Keep 0 free for empty slots
+        return h == EMPTY ? 1L : h;
+    }
+}
@@ -0,0 +1,326 @@
+package sentimentAnalysis;
+
+import domain.TweetModel;
+import org.bson.Document;
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.JFreeChart;
+import org.jfree.data.category.DefaultCategoryDataset;
+import repository.MongoRepository;
+import repository.TweetField;
+import utils.SimHash;
+import utils.SimHashClusters;
+import utils.TweetScanner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.exists;
+
+/**
+ * Finds clusters of near-duplicate tweets, such as the copies of a bot campaign which differ only by a handle or
+ * a link. Tweets are transformed as by {@link TweetSentimentAnalysis}, fingerprinted with a 64-bit {@link SimHash}
+ * of their words without stop words, and clustered with {@link SimHashClusters}.
+ *
+ * Each tweet of a cluster gets the tweetID of the first tweet of the cluster as clusterID, so that an analysis can
+ * count each cluster once, see {@link TweetSentimentAnalysis#setCountClustersOnce(boolean)}. Tweets without
+ * near-duplicates have no clusterID.
+ *
+ * The tweets of several partitions of a keyword are clustered together, so a cluster may span partitions.
+ *
+ * Fingerprints are stored in the tweets, so that in incremental mode only the tweets fingerprinted by no previous
+ * analysis are transformed, see {@link #setIncremental(boolean)}.
+ */
+public class NearDuplicateAnalysis extends SentimentAnalysis {
+
+    /**
+     * Tweets whose clusterID or fingerprint changed written back with a single bulk write
+     */
+    private static final int UPDATE_BATCH_SIZE = 1000;
+
+    /**
+     * Chars of the text of a cluster's first tweet printed in the report
+     */
+    private static final int SAMPLE_LENGTH = 60;
+
+    /**
+     * Transforms and tokenizes tweets text, removing all tracked keywords
+     */
+    private final TweetScanner scanner;
+
+    private final SimHashClusters clusters;
+
+    /**
+     * Analyzed collections, repo and the other partitions of the keyword
+     */
+    private final List<MongoRepository> partitions;
+
+    /**
+     * Stored clusterID and partition index of each fingerprinted tweet, to write back only the changed ones
+     */
+    private long[] storedClusterIDs = new long[1024];
+    private int[] partitionIndexes = new int[1024];
+
+    /**
+     * Tweets without any word left after transformation, which are not clustered
+     */
+    private long emptyTweets = 0;
+
+    /**
+     * Whether stored fingerprints are read instead of computed again, see {@link #setIncremental(boolean)}
+     */
+    private boolean incremental = false;
+
+    /**
+     * Tweets transformed and fingerprinted by this analysis, and fingerprints which changed, waiting to be written back
+     */
+    private long fingerprinted = 0;
+    private final long[] changedTweetIDs = new long[UPDATE_BATCH_SIZE];
+    private final long[] changedFingerprints = new long[UPDATE_BATCH_SIZE];
+    private int changedCount = 0;
+
+    /**
+     * Tweets left empty which had a clusterID, e.g. because of new tracked keywords
+     */
+    private final List<Long> unclusteredTweetIDs = new ArrayList<>();
+    private final List<Integer> unclusteredPartitionIndexes = new ArrayList<>();
+
+    /**
+     * @param keywords keywords removed from tweets text, besides the collection name
+     * @param maxDistance max differing bits of the fingerprints of near-duplicate tweets
+     */
+    public NearDuplicateAnalysis(MongoRepository repo, Collection<String> keywords, int maxDistance) {
+        this(Collections.singletonList(repo), keywords, maxDistance);
+    }
+
+    /**
+     * Clusters the tweets of several partitions of a keyword as a single collection
+     * @param keywords keywords removed from tweets text, besides the collection names
+     * @param maxDistance max differing bits of the fingerprints of near-duplicate tweets
+     */
+    public NearDuplicateAnalysis(List<MongoRepository> partitions, Collection<String> keywords, int maxDistance) {
+        super(partitions.get(0));
+        this.partitions = partitions;
+        Set<String> removedKeywords = new LinkedHashSet<>(keywords);
+        for (MongoRepository partition : partitions)
+            removedKeywords.add(partition.getCollectionName());
+        this.scanner = new TweetScanner(removedKeywords, true);
+        this.clusters = new SimHashClusters(maxDistance);
+    }
+
+    /**
+     * In incremental mode the fingerprints stored by previous analyses are read, and only the tweets without one are
+     * transformed and fingerprinted; every tweet is still clustered, so that new tweets join older clusters.
+     * Otherwise every tweet is fingerprinted again and the stored fingerprints are replaced, e.g. after tracked
+     * keywords changed. Tweets without any word have no fingerprint and are transformed again by every analysis.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Fingerprints the tweets of the partitions, clusters them and writes back the fingerprints and clusterIDs
+     * which changed
+     */
+    public void findClusters() {
+        long startNanos = System.nanoTime();
+        SimHash simHash = new SimHash();
+
+        for (int p = 0; p < partitions.size(); p++)
+            fingerprintTweets(p, simHash);
+
+        clusters.cluster();
+        long changed = writeClusterIDs();
+
+        System.out.printf("\rFound %d near-duplicate tweets in %d clusters out of %d tweets (%d fingerprinted) in %.1f s, %d clusterIDs changed\n",
+                clusters.getNearDuplicateCount(), clusters.getClusterCount(), clusters.size() + emptyTweets,
+                fingerprinted, (System.nanoTime() - startNanos) / 1e9, changed);
+    }
+
+    /**
+     * Adds the fingerprints of the tweets of partition p, read in incremental mode for the tweets which have one,
+     * computed for the others
+     */
+    private void fingerprintTweets(int p, SimHash simHash) {
+        MongoRepository partition = partitions.get(p);
+        String fingerprintField = TweetField.FINGERPRINT.getFieldName();
+
+        if (incremental) {
+            try (Stream<TweetModel> tweets = partition.newQuery()
+                    .setFilter(exists(fingerprintField))
+                    .setFields(TweetField.TWEET_ID, TweetField.CLUSTER_ID, TweetField.FINGERPRINT)
+                    .setBatchSize(10000)
+                    .create()
+                    .stream()) {
+                tweets.forEach(tweet -> addFingerprint(p, tweet, tweet.getFingerprint()));
+            }
+        }
+
+        try (Stream<TweetModel> tweets = partition.newQuery()
+                .setFilter(incremental ? exists(fingerprintField, false) : new Document())
+                .setFields(TweetField.TWEET_ID, TweetField.TWEET_TEXT, TweetField.CLUSTER_ID, TweetField.FINGERPRINT)
+                .setBatchSize(10000)
+                .create()
+                .stream()) {
+            tweets.forEach(tweet -> {
+                long fingerprint = fingerprint(tweet.getTweetText(), simHash);
+                fingerprinted++;
+                if (fingerprint != tweet.getFingerprint())
+                    queueFingerprint(partition, tweet.getTweetID(), fingerprint);
+                addFingerprint(p, tweet, fingerprint);
+            });
+        }
+        writeFingerprints(partition);
+    }
+
+    /**
+     * Adds the fingerprint of tweet of partition p, or counts it as empty if the fingerprint is 0
+     */
+    private void addFingerprint(int p, TweetModel tweet, long fingerprint) {
+        if (fingerprint == 0) {
+            emptyTweets++;
+            if (tweet.getClusterID() != 0) {
+                unclusteredTweetIDs.add(tweet.getTweetID());
+                unclusteredPartitionIndexes.add(p);
+            }
+            return;
+        }
+
+        int index = clusters.add(tweet.getTweetID(), fingerprint);
+        if (index == storedClusterIDs.length) {
+            storedClusterIDs = Arrays.copyOf(storedClusterIDs, index * 2);
+            partitionIndexes = Arrays.copyOf(partitionIndexes, index * 2);
+        }
+        storedClusterIDs[index] = tweet.getClusterID();
+        partitionIndexes[index] = p;
+
+        if (clusters.size() % 10000 == 0)
+            System.out.printf("\rFingerprinting...%d tweets", clusters.size());
+    }
+
+    /**
+     * Queues the changed fingerprint of a tweet of partition, written back in batches
+     */
+    private void queueFingerprint(MongoRepository partition, long tweetID, long fingerprint) {
+        changedTweetIDs[changedCount] = tweetID;
+        changedFingerprints[changedCount++] = fingerprint;
+        if (changedCount == UPDATE_BATCH_SIZE)
+            writeFingerprints(partition);
+    }
+
+    private void writeFingerprints(MongoRepository partition) {
+        if (changedCount > 0)
+            partition.updateFingerprints(changedTweetIDs, changedFingerprints, changedCount);
+        changedCount = 0;
+    }
+
+    /**
+     * Prints the n largest clusters with the text of their first tweet, and produces a bar chart of their sizes
+     */
+    public void printLargestClusters(int n, String chartsDirectory) {
+        int[] largest = clusters.largestClusters(n);
+        if (largest.length == 0) {
+            System.out.println("No near-duplicate tweets");
+            return;
+        }
+
+        DefaultCategoryDataset dataset = new DefaultCategoryDataset();
+
+        System.out.println("Largest " + largest.length + " near-duplicate clusters:");
+        for (int k = 0; k < largest.length; k++) {
+            long clusterID = clusters.getClusterID(largest[k]);
+            int size = clusters.getClusterSize(largest[k]);
+            System.out.printf("%2d. %-20d %6d  %s\n", k + 1, clusterID, size, sampleText(clusterID));
+            dataset.addValue(size, "tweets", String.valueOf(clusterID));
+        }
+
+        JFreeChart barChart = ChartFactory.createBarChart("Largest " + largest.length + " near-duplicate clusters",
+                "clusterID", "tweets", dataset);
+        exportCharts(chartsDirectory, barChart);
+    }
+
+    /**
+     * Returns the fingerprint of the words of text which are not stop words, 0 if there is none
+     */
+    private long fingerprint(String text, SimHash simHash) {
+        if (text == null)
+            return 0;
+
+        int tokens = scanner.scan(text);
+        char[] buffer = scanner.getBuffer();
+
+        simHash.reset();
+        for (int i = 0; i < tokens; i++)
+            if (!TweetSentimentAnalysis.isStopWord(scanner.getToken(i)))
+                simHash.add(buffer, scanner.getTokenStart(i), scanner.getTokenEnd(i));
+        return simHash.fingerprint();
+    }
+
+    /**
+     * Writes back the clusterIDs which differ from the stored ones, to the partition of each tweet
+     * @return the number of tweets updated
+     */
+    private long writeClusterIDs() {
+        long changed = 0;
+        for (int p = 0; p < partitions.size(); p++)
+            changed += writeClusterIDs(p);
+        return changed;
+    }
+
+    private long writeClusterIDs(int p) {
+        MongoRepository partition = partitions.get(p);
+        long[] tweetIDs = new long[UPDATE_BATCH_SIZE];
+        long[] clusterIDs = new long[UPDATE_BATCH_SIZE];
+        int count = 0;
+        long changed = 0;
+
+        int tweets = clusters.size() + unclusteredTweetIDs.size();
+        for (int i = 0; i < tweets; i++) {
+            boolean clustered = i < clusters.size();
+            if ((clustered ? partitionIndexes[i] : unclusteredPartitionIndexes.get(i - clusters.size())) != p)
+                continue;
+
+            long clusterID = clustered ? clusters.getClusterID(i) : 0;
+            if (clustered && clusterID == storedClusterIDs[i])
+                continue;
+
+            tweetIDs[count] = clustered ? clusters.getID(i) : unclusteredTweetIDs.get(i - clusters.size());
+            clusterIDs[count++] = clusterID;
+            changed++;
+            if (count == UPDATE_BATCH_SIZE) {
+                partition.updateClusterIDs(tweetIDs, clusterIDs, count);
+                count = 0;
+            }
+        }
+        if (count > 0)
+            partition.updateClusterIDs(tweetIDs, clusterIDs, count);
+
+        return changed;
+    }
+
+    /**
+     * Returns the beginning of the text of tweet tweetID, on a single line
+     */
+    private String sampleText(long tweetID) {
+        for (MongoRepository partition : partitions) {
+            try (Stream<TweetModel> tweets = partition.newQuery()
+                    .setFilter(eq("tweetID", tweetID))
+                    .setFields(TweetField.TWEET_TEXT)
+                    .create()
+                    .stream()) {
+                String text = tweets.findFirst().map(TweetModel::getTweetText).orElse(null);
+                if (text == null)
+                    continue;
+                text = text.replaceAll("\\s+", " ");
+                return text.length() > SAMPLE_LENGTH ? text.substring(0, SAMPLE_LENGTH) + "..." : text;
+            }
+        }
+        return "";
+    }
+}
@@ -0,0 +1,107 @@
+package sentimentAnalysis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A stage of the tweet analysis pipeline: a number of threads running the same loop,
+ * which counts the tweets it processes so that its throughput can be reported.
+ */
+class PipelineStage {
+
+    private final String name;
+    private final List<Thread> threads = new ArrayList<>();
+    private final AtomicLong processed = new AtomicLong();
+
+    /**
+     * Threads of this stage which have not finished yet
+     */
+    private final AtomicInteger running;
+
+    private final Runnable onFinish;
+
+    /**
+     * Set when a thread of this stage ended with an exception instead of at the end of the tweets
+     */
+    private volatile boolean failed = false;
+
+    private long startNanos;
+    private volatile long endNanos;
+
+    /**
+     * Body of every thread of a stage
+     */
+    interface Loop {
+        void run(PipelineStage stage) throws InterruptedException;
+    }
+
+    /**
+     * @param loop body of every thread of the stage
+     * @param onFinish called by the last thread of the stage to finish, e.g. to stop the next stage
+     */
+    PipelineStage(String name, int threadCount, Loop loop, Runnable onFinish) {
+        this.name = name;
+        this.running = new AtomicInteger(threadCount);
+        this.onFinish = onFinish;
+
+        for (int i = 0; i < threadCount; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    loop.run(this);
+                } catch (InterruptedException e) {
+                    failed = true;
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException | Error e) {
+                    failed = true;
+                    throw e;
+                } finally {
+                    if (running.decrementAndGet() == 0) {
+                        endNanos = System.nanoTime();
+                        this.onFinish.run();
+                    }
+                }
+            }, "analysis-" + name + "-" + (i + 1));
+            t.setDaemon(true);
+            threads.add(t);
+        }
+    }
+
+    void start() {
+        startNanos = System.nanoTime();
+        threads.forEach(Thread::start);
+    }
+
+    void join() throws InterruptedException {
+        for (Thread t : threads)
+            t.join();
+    }
+
+    /**
+     * Counts a processed tweet
+     */
+    void processed() {
+        processed.incrementAndGet();
+    }
+
+    long getProcessed() {
+        return processed.get();
+    }
+
+    /**
+     * Returns true if a thread of this stage ended with an exception, so that the tweets did not all go through it
+     */
+    boolean hasFailed() {
+        return failed;
+    }
+
+    /**
+     * Returns tweets processed, threads and throughput of the stage
+     */
+    String report() {
+        double seconds = Math.max(1, endNanos - startNanos) / 1e9;
+        return String.format("%-12s %2d thread(s) %10d tweets %12.1f tweets/s",
+                name, threads.size(), processed.get(), processed.get() / seconds);
+    }
+}
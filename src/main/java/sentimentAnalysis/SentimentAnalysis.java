@@ -1,7 +1,10 @@
 package sentimentAnalysis;
 
+import org.jfree.chart.JFreeChart;
 import repository.MongoRepository;
 
+import java.nio.file.Paths;
+
 public abstract class SentimentAnalysis {
 
     /**
@@ -15,9 +18,33 @@ public abstract class SentimentAnalysis {
      */
     protected MongoRepository repo;
 
+    /**
+     * Service which saves charts, null to save them with a service of the charts directory of each call
+     */
+    private ChartExportService chartExportService;
+
     public SentimentAnalysis(MongoRepository repo) {
         this.repo = repo;
     }
 
+    /**
+     * Saves charts with service, shared with other analyses. Charts are saved in the background,
+     * until {@link ChartExportService#awaitCompletion()} is called.
+     */
+    public void setChartExportService(ChartExportService chartExportService) {
+        this.chartExportService = chartExportService;
+    }
+
+    /**
+     * Saves charts with the shared service, or in chartsDirectory with a service which is shut down once they are saved
+     */
+    protected void exportCharts(String chartsDirectory, JFreeChart... charts) {
+        ChartExportService service = chartExportService != null ? chartExportService :
+                new ChartExportService(Paths.get(chartsDirectory));
+        for (JFreeChart chart : charts)
+            service.export(chart);
+        if (service != chartExportService)
+            service.shutdown();
+    }
 
 }
@@ -0,0 +1,233 @@
+package sentimentAnalysis;
+
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HTTP client of the text-processing.com sentiment web api.
+ * Requests run concurrently on a bounded thread pool and connections are kept alive and reused
+ * between requests. Failed requests are retried with exponential backoff, except when the daily limit
+ * of the web api has been reached.
+ */
+public class SentimentClient implements SentimentScorer {
+
+    /**
+     * URL of sentiment analysis web api
+     */
+    public static final String SENTIMENT_URL = "http://text-processing.com/api/sentiment/";
+
+    public static class Builder {
+
+        private String url = SENTIMENT_URL;
+
+        private int threads = 4;
+
+        private int connectTimeoutMillis = 5000;
+
+        private int readTimeoutMillis = 10000;
+
+        private int maxRetries = 3;
+
+        private long retryBackoffMillis = 500;
+
+        public Builder setUrl(String url) {
+            this.url = url;
+            return this;
+        }
+
+        public Builder setThreads(int threads) {
+            this.threads = Math.max(1, threads);
+            return this;
+        }
+
+        public Builder setConnectTimeoutMillis(int connectTimeoutMillis) {
+            this.connectTimeoutMillis = connectTimeoutMillis;
+            return this;
+        }
+
+        public Builder setReadTimeoutMillis(int readTimeoutMillis) {
+            this.readTimeoutMillis = readTimeoutMillis;
+            return this;
+        }
+
+        public Builder setMaxRetries(int maxRetries) {
+            this.maxRetries = Math.max(0, maxRetries);
+            return this;
+        }
+
+        public Builder setRetryBackoffMillis(long retryBackoffMillis) {
+            this.retryBackoffMillis = retryBackoffMillis;
+            return this;
+        }
+
+        public SentimentClient create() {
+            return new SentimentClient(this);
+        }
+    }
+
+    private final URL url;
+    private final int threads;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final int maxRetries;
+    private final long retryBackoffMillis;
+    private final ExecutorService executor;
+
+    /**
+     * Set when the web api answers with 503, so that no more requests are sent
+     */
+    private volatile boolean dailyLimitReached = false;
+
+    private SentimentClient(Builder builder) {
+        try {
+            this.url = new URL(builder.url);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid sentiment web api url: " + builder.url, e);
+        }
+        this.threads = builder.threads;
+        this.connectTimeoutMillis = builder.connectTimeoutMillis;
+        this.readTimeoutMillis = builder.readTimeoutMillis;
+        this.maxRetries = builder.maxRetries;
+        this.retryBackoffMillis = builder.retryBackoffMillis;
+
+        // Keep at least one idle connection per thread alive, default of the jdk is 5
+        if (System.getProperty("http.maxConnections") == null)
+            System.setProperty("http.maxConnections", String.valueOf(Math.max(5, threads)));
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "sentiment-client-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Max number of requests in flight
+     */
+    @Override
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Queries the web api for the sentiment of text asynchronously
+     * @return future of the score, which fails with {@link TextProcessingDailyLimitException} when the daily
+     * limit has been reached, or with {@link IOException} when all retries failed
+     */
+    @Override
+    public Future<SentimentScore> submit(String text) {
+        return executor.submit(() -> scoreWithRetries(text));
+    }
+
+    /**
+     * Stops the thread pool. Requests already submitted are completed.
+     */
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private SentimentScore scoreWithRetries(String text) throws IOException, TextProcessingDailyLimitException, InterruptedException {
+        long backoff = retryBackoffMillis;
+
+        for (int attempt = 0; ; attempt++) {
+            if (dailyLimitReached)
+                throw new TextProcessingDailyLimitException();
+
+            try {
+                return score(text);
+            } catch (RetryableResponseException | IOException e) {
+                if (attempt >= maxRetries)
+                    throw e instanceof IOException ? (IOException) e : new IOException(e.getMessage());
+            }
+
+            Thread.sleep(backoff);
+            backoff *= 2;
+        }
+    }
+
+    /**
+     * Sends a single post request to the web api
+     */
+    private SentimentScore score(String text) throws IOException, TextProcessingDailyLimitException, RetryableResponseException {
+
+        // Setting basic post request
+        HttpURLConnection con = (HttpURLConnection) url.openConnection();
+        con.setRequestMethod("POST");
+        con.setRequestProperty("Content-Type", "application/json");
+        con.setConnectTimeout(connectTimeoutMillis);
+        con.setReadTimeout(readTimeoutMillis);
+
+        // Send post request
+        con.setDoOutput(true);
+        try (OutputStream wr = con.getOutputStream()) {
+            wr.write(("text=" + text).getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Check response code
+        int responseCode = con.getResponseCode();
+        if (responseCode != HttpURLConnection.HTTP_OK) {
+            // Consume error body, so that the connection can be reused
+            drain(con.getErrorStream());
+
+            if (responseCode == 400)
+                throw new IOException("400 Bad request response received from text-processing.com for text:\n" +
+                        text + "\nOne of two following conditions has been met:" +
+                        "\n- no value for text is provided" +
+                        "\n- text exceeds 80,000 characters");
+            if (responseCode == 503) {
+                dailyLimitReached = true;
+                throw new TextProcessingDailyLimitException();
+            }
+            if (responseCode == 429 || responseCode >= 500)
+                throw new RetryableResponseException(responseCode);
+
+            throw new IOException(responseCode + " response received from text-processing.com");
+        }
+
+        // parse response json
+        JSONObject json = new JSONObject(new String(drain(con.getInputStream()), StandardCharsets.UTF_8));
+        JSONObject probability = json.getJSONObject("probability");
+
+        return new SentimentScore(json.getString("label"),
+                probability.getDouble("pos"),
+                probability.getDouble("neg"),
+                probability.getDouble("neutral"));
+    }
+
+    /**
+     * Reads stream to its end and closes it. Returns the bytes read.
+     */
+    private static byte[] drain(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (in == null)
+            return out.toByteArray();
+
+        try (InputStream is = in) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = is.read(buffer)) != -1)
+                out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Response code which may succeed if the request is sent again
+     */
+    private static class RetryableResponseException extends Exception {
+        RetryableResponseException(int responseCode) {
+            super(responseCode + " response received from text-processing.com");
+        }
+    }
+}
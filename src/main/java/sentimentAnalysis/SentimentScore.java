@@ -0,0 +1,47 @@
+package sentimentAnalysis;
+
+import domain.TweetModel;
+
+/**
+ * Sentiment label and probabilities of a text, as returned by a sentiment scoring service.
+ */
+public class SentimentScore {
+
+    private final String label;
+    private final double positiveProbability;
+    private final double negativeProbability;
+    private final double neutralProbability;
+
+    public SentimentScore(String label, double positiveProbability, double negativeProbability, double neutralProbability) {
+        this.label = label;
+        this.positiveProbability = positiveProbability;
+        this.negativeProbability = negativeProbability;
+        this.neutralProbability = neutralProbability;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public double getPositiveProbability() {
+        return positiveProbability;
+    }
+
+    public double getNegativeProbability() {
+        return negativeProbability;
+    }
+
+    public double getNeutralProbability() {
+        return neutralProbability;
+    }
+
+    /**
+     * Updates tweet's sentiment label and probabilities with this score
+     */
+    public void applyTo(TweetModel tweet) {
+        tweet.setLabel(label);
+        tweet.setPositiveProbability(positiveProbability);
+        tweet.setNegativeProbability(negativeProbability);
+        tweet.setNeutralProbability(neutralProbability);
+    }
+}
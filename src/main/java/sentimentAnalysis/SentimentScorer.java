@@ -0,0 +1,28 @@
+package sentimentAnalysis;
+
+import java.util.concurrent.Future;
+
+/**
+ * Computes the sentiment label and probabilities of a transformed tweet text.
+ * Implementations may score remotely and asynchronously, like {@link SentimentClient}, or in process,
+ * like {@link LexiconSentimentScorer}.
+ */
+public interface SentimentScorer {
+
+    /**
+     * Scores text
+     * @return future of the score, which fails with {@link TextProcessingDailyLimitException} when the scorer
+     * refuses any more requests, or with {@link java.io.IOException} when scoring failed
+     */
+    Future<SentimentScore> submit(String text);
+
+    /**
+     * Max number of texts scored at the same time
+     */
+    int getThreads();
+
+    /**
+     * Releases the resources of the scorer. Texts already submitted are scored.
+     */
+    void shutdown();
+}
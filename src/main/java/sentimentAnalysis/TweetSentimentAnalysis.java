@@ -1,35 +1,39 @@
 package sentimentAnalysis;
 
-import com.mongodb.Block;
+import com.mongodb.bulk.BulkWriteResult;
 import domain.TweetModel;
+import metrics.Metrics;
+import metrics.Stage;
 import org.jfree.chart.ChartFactory;
-import org.jfree.chart.ChartUtils;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.data.category.DefaultCategoryDataset;
 import org.jfree.data.general.DefaultPieDataset;
+import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.jfree.data.xy.DefaultXYDataset;
-import org.json.JSONObject;
 import repository.MongoRepository;
-import utils.TransformUtil;
-
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.file.Paths;
+import repository.TweetField;
+import utils.Downsampling;
+import utils.SpaceSavingTermCounter;
+import utils.StripedTermCounter;
+import utils.TermCounter;
+import utils.TermFrequencies;
+import utils.TweetScanner;
+
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-public class TweetSentimentAnalysis extends SentimentAnalysis {
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.ne;
+import static com.mongodb.client.model.Filters.or;
 
-    /**
-     * URL of sentiment analysis web api
-     */
-    private static final String SENTIMENT_URL = "http://text-processing.com/api/sentiment/";
+public class TweetSentimentAnalysis extends SentimentAnalysis {
 
     //Taken from Apache Lucene project
     /*private static final HashSet<String> STOP_WORDS = new HashSet<>(
@@ -58,135 +62,214 @@ public class TweetSentimentAnalysis extends SentimentAnalysis {
                     "t","can","will","just","don","should","now"));
 
     /**
-     * Map that counts words appearances in repo's tweets
+     * Counts words appearances in repo's tweets
+     */
+    private TermFrequencies frequents;
+
+    /**
+     * Keywords removed from tweets text
+     */
+    private final Set<String> removedKeywords;
+
+    /**
+     * Transforms and tokenizes tweets text in a single pass, removing all tracked keywords
      */
-    private Map<String, Integer> frequents;
+    private final TweetScanner scanner;
 
     /**
      * Map that counts sentiment probabilities in repo's tweets
      */
     private Map<String, Double> sentimentProbabilities;
 
+    /**
+     * Default number of analyzed tweets written back to repo with a single bulk write
+     */
+    public static final int DEFAULT_UPDATE_BATCH_SIZE = 500;
 
-    public TweetSentimentAnalysis(MongoRepository repo) {
-        super(repo);
-        this.frequents = new HashMap<>();
-        this.sentimentProbabilities = new HashMap<>();
-    }
+    /**
+     * Number of analyzed tweets written back to repo with a single bulk write
+     */
+    private final int updateBatchSize;
 
     /**
-     * Returns true if s belongs to stop words list
+     * Default capacity of each queue between the stages of an analysis
      */
-    private static boolean isStopWord(String s) {
-        return STOP_WORDS.contains(s);
-    }
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
 
     /**
-     * Applies bellow transformations in tweetText
-     * - Clear links
-     * - Clear collection keyword
-     * - Clear non-alphabetic characters
-     * - Convert all letters to lower case
+     * Analyzed tweets waiting to be written back to repo
+     */
+    private List<TweetModel> pendingUpdates;
+
+    /**
+     * Matched and modified documents counts of all bulk writes made by {@link #analyze()}
+     */
+    private long matchedCount;
+    private long modifiedCount;
+
+    /**
+     * Scorer of tweets sentiment, the sentiment analysis web api by default
+     */
+    private final SentimentScorer sentimentScorer;
+
+    /**
+     * Set when the scorer has answered that it refuses any more requests
+     */
+    private volatile boolean dailyLimitReached = false;
+
+    /**
+     * Poison pill which tells a pipeline stage that there are no more tweets
+     */
+    private static final TweetModel END_OF_TWEETS = new TweetModel();
+
+    /**
+     * Number of log-spaced rank buckets of the Zipf diagram
      */
-    private String transformTweet(String tweetText) {
-        //Remove any links
-        tweetText = TransformUtil.clearLinks(tweetText);
+    private static final int ZIPF_BUCKETS = 200;
 
-        //Remove collection name (hashtag) from tweet
-        tweetText = TransformUtil.removeCollectionKeyword(tweetText, repo.getCollectionName());
+    /**
+     * Fields read by an analysis. Analyzed tweets are written back with updates of the changed fields only,
+     * so the fields not read are left untouched.
+     */
+    private static final TweetField[] ANALYSIS_FIELDS = {TweetField.TWEET_ID, TweetField.TWEET_TEXT, TweetField.LABEL,
+            TweetField.POSITIVE_PROBABILITY, TweetField.NEGATIVE_PROBABILITY, TweetField.NEUTRAL_PROBABILITY,
+            TweetField.CLUSTER_ID, TweetField.WORDS_COUNTED};
 
-        //First remove all the non-alphabetic symbols. Better as a first step
-        tweetText = TransformUtil.onlyAlphabetic(tweetText);
+    /**
+     * Whether only tweets not seen by previous analyses are read, see {@link #setIncremental(boolean)}
+     */
+    private boolean incremental = false;
 
-        //Normalize the text (toLowerCase)
-        tweetText = TransformUtil.normalize(tweetText);
+    /**
+     * Whether the words of every tweet read are counted, false when an incremental analysis counts only the tweets
+     * not flagged wordsCounted
+     */
+    private boolean countEveryTweet = true;
 
-        return tweetText;
+    /**
+     * Set when a tweet of the current analysis could not be written back, so that the stored state of an
+     * incremental analysis would not match the flags of the tweets
+     */
+    private volatile boolean incomplete = false;
+
+    /**
+     * Whether near-duplicate tweets are skipped, see {@link #setCountClustersOnce(boolean)}
+     */
+    private boolean countClustersOnce = false;
+
+    /**
+     * Near-duplicate tweets skipped by the current analysis
+     */
+    private final AtomicLong skippedNearDuplicates = new AtomicLong();
+
+
+    public TweetSentimentAnalysis(MongoRepository repo) {
+        this(repo, DEFAULT_UPDATE_BATCH_SIZE);
+    }
+
+    public TweetSentimentAnalysis(MongoRepository repo, int updateBatchSize) {
+        this(repo, updateBatchSize, new SentimentClient.Builder().create());
+    }
+
+    public TweetSentimentAnalysis(MongoRepository repo, int updateBatchSize, SentimentScorer sentimentScorer) {
+        this(repo, updateBatchSize, sentimentScorer, Collections.singletonList(repo.getCollectionName()));
     }
 
     /**
-     * Removes all stop words from tweetText
+     * @param keywords keywords removed from tweets text, besides the collection name
      */
-    private String removeStopWords(String tweetText) {
+    public TweetSentimentAnalysis(MongoRepository repo, int updateBatchSize, SentimentScorer sentimentScorer,
+                                  Collection<String> keywords) {
+        super(repo);
+        this.sentimentScorer = sentimentScorer;
 
-        // Tokenize tweet text
-        List<String> tokenizedTweet = TransformUtil.tokenizeToList(tweetText);
+        this.removedKeywords = new LinkedHashSet<>(keywords);
+        this.removedKeywords.add(repo.getCollectionName());
+        this.scanner = new TweetScanner(removedKeywords, true);
+        this.frequents = new TermCounter();
+        this.sentimentProbabilities = new HashMap<>();
+        this.updateBatchSize = Math.max(1, updateBatchSize);
+        this.pendingUpdates = new ArrayList<>(this.updateBatchSize);
+    }
 
-        // Remove stopwords
-        List<String> tweetWithoutStopWords = new ArrayList<>();
-        for (String word: tokenizedTweet)
-            if ( !isStopWord(word) )
-                tweetWithoutStopWords.add(word);
+    /**
+     * Counts words with a fixed memory Space-Saving counter instead of an exact one.
+     * Must be called before any word has been counted.
+     * @param maxError max overestimation of a word count, as a fraction of all counted words
+     */
+    public void useHeavyHitters(double maxError) {
+        if (!frequents.isEmpty())
+            throw new IllegalStateException("Words have already been counted");
+        this.frequents = SpaceSavingTermCounter.withMaxError(maxError);
+    }
 
-        //Create the updated tweet
-        StringBuilder temp = new StringBuilder();
-        for (String word : tweetWithoutStopWords)
-            temp.append(word).append(" ");
+    /**
+     * In incremental mode an analysis reads only the tweets whose words have not been counted by a previous one,
+     * plus the tweets it left waiting for their score, e.g. because of the daily limit of the sentiment web api.
+     * Both are found with indexes. Counted tweets are flagged wordsCounted when they are written back, and word
+     * counts are stored in repo and merged with the counts of the new tweets; sentiment totals are summed by
+     * the server, so tweets not read still count. The first incremental analysis of a collection, and the one
+     * after an analysis which did not complete, reads and counts every tweet.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
 
-        return temp.toString();
+    /**
+     * When set, each cluster of near-duplicate tweets found by {@link NearDuplicateAnalysis} is counted once:
+     * the near-duplicates of the first tweet of a cluster are neither counted nor scored, and the server side
+     * sentiment totals of an incremental analysis leave them out. Words of tweets counted by a previous incremental
+     * analysis before they were found to be near-duplicates stay counted.
+     */
+    public void setCountClustersOnce(boolean countClustersOnce) {
+        this.countClustersOnce = countClustersOnce;
+    }
+
+    /**
+     * Returns true if tweet is skipped as a near-duplicate. In incremental mode a skipped tweet is flagged
+     * wordsCounted, without counting its words, and has to be written back so that it is not read again.
+     */
+    private boolean skipNearDuplicate(TweetModel tweet) {
+        if (!isSkipped(tweet))
+            return false;
+        if (incremental)
+            tweet.setWordsCounted(true);
+        skippedNearDuplicates.incrementAndGet();
+        return true;
+    }
+
+    private boolean isSkipped(TweetModel tweet) {
+        return countClustersOnce && tweet.isNearDuplicate();
     }
 
     /**
-     * Queries chosen web api for tweet's text sentiment analysis and updates tweet's sentiment label and probabilities
+     * Returns true if s belongs to stop words list
+     */
+    public static boolean isStopWord(String s) {
+        return STOP_WORDS.contains(s);
+    }
+
+    /**
+     * Queries chosen scorer for tweet's text sentiment analysis. The returned future updates nothing,
+     * its score has to be applied to the tweet with {@link SentimentScore#applyTo(TweetModel)}.
      *
-     * @throws TextProcessingDailyLimitException when web api return http code 503, which means that daily limit has been reached
+     * @return the future score, or null when there is no need for scoring
      */
-    private void sentimentAnalyze(TweetModel tweet) throws IOException, TextProcessingDailyLimitException {
+    private Future<SentimentScore> sentimentAnalyze(TweetModel tweet) {
 
         // Check conditions
         if (tweet.getTransformedTweetText().equals("")) {
             System.err.println("Tweet \"" + tweet.getTweetText() + "\" does not have any text left after transformation.");
-            return;
+            return null;
         }
 
         // This will check if a tweet has already been analyzed by looking if it has a value in its label.
         // If it's been analyzed, there is no need for extra api calls
         // should I stay or should I go?
         if (tweet.getLabel() != null)
-            return;
+            return null;
 
-        // Setting basic post request
-        HttpURLConnection con = (HttpURLConnection) new URL(SENTIMENT_URL).openConnection();
-        con.setRequestMethod("POST");
-        con.setRequestProperty("Content-Type", "application/json");
-
-        // Send post request
-        con.setDoOutput(true);
-        DataOutputStream wr = new DataOutputStream(con.getOutputStream());
-        wr.writeBytes("text=" + tweet.getTransformedTweetText());
-        wr.flush();
-        wr.close();
-
-        // Check response code
-        int responseCode = con.getResponseCode();
-        if (responseCode == 400) {
-            System.err.println("400 Bad request response received from text-processing.com for tweet:\n " +
-                    tweet.getTweetText() +  "\n with transformed text:\n" +
-                    tweet.getTransformedTweetText() + "\nOne of two following conditions has been met:" +
-                    "\n- no value for text is provided" +
-                    "\n- text exceeds 80,000 characters");
-        } else if (responseCode == 503) {
-            throw new TextProcessingDailyLimitException();
-        }
-
-        // Get response text-json
-        BufferedReader in = new BufferedReader(new InputStreamReader(con.getInputStream()));
-        String output;
-        StringBuilder b = new StringBuilder();
-        while ((output = in.readLine()) != null) {
-            b.append(output);
-        }
-        in.close();
-
-        // parse response json
-        JSONObject json = new JSONObject(b.toString());
-        JSONObject probability = json.getJSONObject("probability");
-
-        //Update the tweet model
-        tweet.setLabel(json.getString("label"));
-        tweet.setNegativeProbability(probability.getDouble("neg"));
-        tweet.setNeutralProbability(probability.getDouble("neutral"));
-        tweet.setPositiveProbability(probability.getDouble("pos"));
+        return sentimentScorer.submit(tweet.getTransformedTweetText());
     }
 
     /**
@@ -200,63 +283,345 @@ public class TweetSentimentAnalysis extends SentimentAnalysis {
     }
 
     /**
-     * Calls the {@link #transformTweet(String)} method and then adds words appearances
-     * in transformed tweet text to {@link #frequents}
+     * Adds tweet to {@link #pendingUpdates} and writes them back to repo when batch is full
+     */
+    private void queueUpdate(TweetModel tweet) {
+        pendingUpdates.add(tweet);
+        if (pendingUpdates.size() >= updateBatchSize)
+            flushUpdates();
+    }
+
+    /**
+     * Writes {@link #pendingUpdates} back to repo with a single bulk write of the changed fields
+     */
+    private void flushUpdates() {
+        if (pendingUpdates.isEmpty())
+            return;
+
+        BulkWriteResult result = repo.updateAnalysisFields(pendingUpdates);
+        matchedCount += result.getMatchedCount();
+        modifiedCount += result.getModifiedCount();
+
+        pendingUpdates = new ArrayList<>(updateBatchSize);
+    }
+
+    /**
+     * Calls {@link #transformTweetAndCollectFrequents(String, TweetScanner, boolean)} with {@link #scanner}
      */
     private String transformTweetAndCollectFrequents(String tweetText) {
+        return transformTweetAndCollectFrequents(tweetText, scanner, true);
+    }
+
+    /**
+     * Calls {@link #transformTweet(String, TweetScanner, TermFrequencies)} with {@link #frequents}, or without
+     * counting words when they have already been counted by a previous analysis
+     */
+    private String transformTweetAndCollectFrequents(String tweetText, TweetScanner scanner, boolean countWords) {
+        long startNanos = Metrics.start();
+        String transformed = transformTweet(tweetText, scanner, countWords ? frequents : null);
+        Metrics.stop(Stage.TRANSFORM, startNanos);
+        return transformed;
+    }
+
+    /**
+     * Applies bellow transformations in tweetText with scanner, adds words appearances
+     * in transformed tweet text to frequents and removes stop words from it
+     * - Clear links
+     * - Clear collection keyword and other tracked keywords
+     * - Clear non-alphabetic characters
+     * - Convert all letters to lower case
+     *
+     * Public so that the benchmarks measure the transformation of the analysis itself.
+     *
+     * @param frequents counter of the words, null not to count them
+     * @return transformed tweet text without stop words, each word followed by a space
+     */
+    public static String transformTweet(String tweetText, TweetScanner scanner, TermFrequencies frequents) {
 
-        String transformedTweet = transformTweet(tweetText);
+        int tokens = scanner.scan(tweetText);
+        char[] buffer = scanner.getBuffer();
 
-        // Count words in tweet
-        for (String word : TransformUtil.tokenizeToList(transformedTweet))
-            frequents.merge(word, 1, Integer::sum);
+        StringBuilder temp = new StringBuilder(tweetText.length());
+        for (int i = 0; i < tokens; i++) {
+            int start = scanner.getTokenStart(i);
+            int end = scanner.getTokenEnd(i);
+
+            // Count words in tweet
+            String word = frequents != null ? frequents.getTerm(frequents.add(buffer, start, end)) : new String(buffer, start, end - start);
+
+            // Remove stopwords
+            if (!isStopWord(word))
+                temp.append(buffer, start, end - start).append(' ');
+        }
 
-        return transformedTweet;
+        return temp.toString();
     }
 
     /**
      * Does a generic analysis in repo. It transforms tweet text, collects words appearances, removes stop words,
      * does sentiment analysis and collects sentiment probabilities in each tweet in repo.
+     * Runs the pipeline of {@link #analyze(int, int, int)} with a single transformer thread, and up to the
+     * scorer's threads tweets scored concurrently.
      */
     public void analyze() {
+        analyze(1, sentimentScorer.getThreads(), DEFAULT_QUEUE_CAPACITY);
+    }
 
-        final long totalCount = repo.getCollectionCount();
-        final AtomicLong currCount = new AtomicLong(0L);
+    /**
+     * Does the analysis with a pipeline of stages, each one running on its own threads:
+     * reader (1 thread) -> transformer -> scorer -> writer (1 thread).
+     * Stages are connected with bounded queues, so a slow stage makes the stages before it wait instead of
+     * filling the memory. Tweets are not written back in collection order. The throughput of each stage is printed
+     * at the end.
+     *
+     * @param transformerThreads threads transforming tweets and counting words
+     * @param scorerThreads threads waiting for sentiment scores
+     * @param queueCapacity capacity of each queue between stages
+     */
+    public void analyze(int transformerThreads, int scorerThreads, int queueCapacity) {
+
+        // Words are counted by several threads
+        if (transformerThreads > 1 && !(frequents instanceof StripedTermCounter)) {
+            if (frequents instanceof TermCounter && frequents.isEmpty()) {
+                frequents = new StripedTermCounter(transformerThreads);
+            } else {
+                System.err.println("Words counter is not thread safe, tweets will be transformed by a single thread.");
+                transformerThreads = 1;
+            }
+        }
 
-        Block<TweetModel> analysisBlock = (TweetModel tweetModel) -> {
+        final int transformers = Math.max(1, transformerThreads);
+        final int scorers = Math.max(1, scorerThreads);
+        final Bson filter = beginAnalysis();
+        final long totalCount = repo.getCollectionCount(filter);
+
+        BlockingQueue<TweetModel> toTransform = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<TweetModel> toScore = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<TweetModel> toWrite = new ArrayBlockingQueue<>(queueCapacity);
+
+        PipelineStage reader = new PipelineStage("reader", 1, stage -> {
+            // Cursor may wait for the other stages longer than the default server timeout
+            try (Stream<TweetModel> tweets = repo.newQuery()
+                    .setFilter(filter)
+                    .setFields(ANALYSIS_FIELDS)
+                    .setNoCursorTimeout(true)
+                    .create()
+                    .stream()) {
+                Iterator<TweetModel> cursor = tweets.iterator();
+                while (cursor.hasNext()) {
+                    toTransform.put(cursor.next());
+                    stage.processed();
+                }
+            }
+        }, () -> endOfTweets(toTransform, transformers));
+
+        PipelineStage transformer = new PipelineStage("transformer", transformers, stage -> {
+            // Scanners reuse their buffers, so each thread needs its own
+            TweetScanner threadScanner = new TweetScanner(removedKeywords, true);
+            for (TweetModel tweet = toTransform.take(); tweet != END_OF_TWEETS; tweet = toTransform.take()) {
+                if (skipNearDuplicate(tweet)) {
+                    // Goes straight to the writer, whose end is signaled after the end of this stage
+                    if (incremental)
+                        toWrite.put(tweet);
+                    continue;
+                }
+                try {
+                    // Transform tweet, collect word appearances and remove stop words from tweet
+                    tweet.setTransformedTweetText(transformTweetAndCollectFrequents(tweet.getTweetText(), threadScanner,
+                            countWords(tweet)));
+                    stage.processed();
+                    toScore.put(tweet);
+                } catch (RuntimeException e) {
+                    // The tweet is neither counted nor written back, so the run cannot be saved as complete
+                    incomplete = true;
+                    e.printStackTrace();
+                }
+            }
+        }, () -> endOfTweets(toScore, scorers));
+
+        PipelineStage scorer = new PipelineStage("scorer", scorers, stage -> {
+            for (TweetModel tweet = toScore.take(); tweet != END_OF_TWEETS; tweet = toScore.take()) {
+
+                // Once the scorer refuses requests, tweets not analyzed yet are written back without a label.
+                // So are tweets whose scoring failed, a later analysis scores them without counting their words again.
+                if (!dailyLimitReached || tweet.getLabel() != null || tweet.getTransformedTweetText().equals("")) {
+                    try {
+                        // Query the scorer for sentiment analysis
+                        long start = Metrics.start();
+                        Future<SentimentScore> score = sentimentAnalyze(tweet);
+                        if (score != null) {
+                            score.get().applyTo(tweet);
+                            Metrics.stop(Stage.SCORE, start);
+                        }
+                        stage.processed();
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof TextProcessingDailyLimitException) {
+                            reportDailyLimitReached();
+                        } else {
+                            Metrics.error(Stage.SCORE);
+                            e.getCause().printStackTrace();
+                        }
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+                toWrite.put(tweet);
+            }
+        }, () -> endOfTweets(toWrite, 1));
 
-            if (currCount.incrementAndGet() % 50 == 0) {
-                System.out.printf("\rAnalysing...%d%%", currCount.get()*100/totalCount);
+        PipelineStage writer = new PipelineStage("writer", 1, stage -> {
+            for (TweetModel tweet = toWrite.take(); tweet != END_OF_TWEETS; tweet = toWrite.take()) {
+                // Take sentiment probabilities from this tweet model and add them to sum
+                if (!isSkipped(tweet))
+                    collectSentimentProbabilities(tweet);
+
+                // Queue tweet model for the bulk update of collection
+                try {
+                    queueUpdate(tweet);
+                } catch (RuntimeException e) {
+                    incomplete = true;
+                    e.printStackTrace();
+                }
+
+                stage.processed();
+                if (stage.getProcessed() % 50 == 0)
+                    System.out.printf("\rAnalysing...%d%%", stage.getProcessed()*100/Math.max(1, totalCount));
             }
 
-            // Transform tweet and collect word appearances
-            String transformedTweetText = transformTweetAndCollectFrequents(tweetModel.getTweetText());
+            // Write back the last, partially filled batch
+            flushUpdates();
+        }, () -> {});
 
-            // Remove stop words from tweet
-            transformedTweetText = removeStopWords(transformedTweetText);
+        List<PipelineStage> stages = Arrays.asList(reader, transformer, scorer, writer);
+        stages.forEach(PipelineStage::start);
+        try {
+            for (PipelineStage stage : stages)
+                stage.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
 
-            tweetModel.setTransformedTweetText(transformedTweetText);
+        // A stage which ended with an exception, e.g. a reader losing its cursor, left tweets unread or unwritten
+        if (!incomplete && stages.stream().noneMatch(PipelineStage::hasFailed))
+            finishAnalysis();
+        else
+            reportIncomplete();
+        printAnalysisSummary();
 
-            // Query text-processing.com for sentiment analysis
-            try {
-                // Sentiment Analysis on tweet and store probabilities in this tweet model
-                sentimentAnalyze(tweetModel);
+        System.out.println("Pipeline stages throughput:");
+        stages.forEach(stage -> System.out.println(stage.report()));
+    }
 
-                // Take sentiment probabilities from this tweet model and add them to sum
-                collectSentimentProbabilities(tweetModel);
+    /**
+     * Tells every thread of the next stage that there are no more tweets
+     */
+    private static void endOfTweets(BlockingQueue<TweetModel> queue, int threads) {
+        try {
+            for (int i = 0; i < threads; i++)
+                queue.put(END_OF_TWEETS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Loads the checkpoint of the previous incremental analysis
+     * @return filter of the tweets to read: all of them, or in incremental mode the tweets not flagged wordsCounted
+     * and the tweets waiting for their score
+     */
+    private Bson beginAnalysis() {
+        skippedNearDuplicates.set(0);
+        incomplete = false;
+        countEveryTweet = true;
+        if (!incremental)
+            return new Document();
+
+        repo.createIncrementalAnalysisIndexes();
+        if (!repo.hasAnalysisCheckpoint()) {
+            // No checkpoint, or an analysis which did not complete: stored counts cannot be trusted, count every tweet again
+            repo.dropAnalysisState();
+            return new Document();
+        }
 
-                // Update tweet model in collection
-                repo.updateItem(tweetModel);
+        // Tweets are flagged as they are written back, before their words are merged with the stored counts:
+        // until this analysis saves its checkpoint, a crash makes the next one start over instead of counting twice
+        repo.deleteAnalysisCheckpoint();
+        countEveryTweet = false;
+        System.out.println("Resuming analysis of the tweets not counted or not scored yet");
+        return or(ne(TweetField.WORDS_COUNTED.getFieldName(), true), eq(MongoRepository.SCORE_PENDING, true));
+    }
 
-            } catch (IOException e) {
-                e.printStackTrace();
-            } catch (TextProcessingDailyLimitException e) {
-                e.printStackTrace();
-            }
-        };
+    /**
+     * Returns true if the words of tweet have to be counted. In incremental mode the tweet is flagged
+     * wordsCounted, so that the flag is written back with it.
+     */
+    private boolean countWords(TweetModel tweet) {
+        boolean count = countEveryTweet || !tweet.isWordsCounted();
+        if (incremental)
+            tweet.setWordsCounted(true);
+        return count;
+    }
+
+    /**
+     * Reports an analysis which did not complete, whose word counts and checkpoint are not stored
+     */
+    private void reportIncomplete() {
+        System.err.println("\nAnalysis did not complete" +
+                (incremental ? ", the next incremental analysis will count every tweet again" : ""));
+    }
+
+    /**
+     * In incremental mode, merges the word counts of this analysis with the stored ones, saves the checkpoint
+     * and replaces the counts and sentiment totals of this analysis with the totals of the whole collection
+     */
+    private void finishAnalysis() {
+        if (!incremental)
+            return;
 
-        repo.getCollectionIterable().forEach(analysisBlock);
+        repo.incrementWordCounts(action -> frequents.forEachId(id -> action.accept(frequents.getTerm(id), frequents.getCount(id))));
+        repo.saveAnalysisCheckpoint();
+
+        frequents = frequents instanceof SpaceSavingTermCounter ?
+                new SpaceSavingTermCounter(((SpaceSavingTermCounter) frequents).getCapacity()) : new TermCounter();
+        repo.forEachWordCount(frequents::add);
+
+        Document sums = repo.sumSentimentProbabilities(countClustersOnce);
+        sentimentProbabilities = new HashMap<>();
+        sentimentProbabilities.put("negative", ((Number) sums.get("negativeProbability")).doubleValue());
+        sentimentProbabilities.put("neutral", ((Number) sums.get("neutralProbability")).doubleValue());
+        sentimentProbabilities.put("positive", ((Number) sums.get("positiveProbability")).doubleValue());
+    }
 
+    /**
+     * Adds the word counts and sentiment totals of other, e.g. the analysis of another partition of the same keyword,
+     * to the ones of this analysis, so that they are printed as a single data set
+     */
+    public void merge(TweetSentimentAnalysis other) {
+        other.frequents.forEachId(id -> frequents.add(other.frequents.getTerm(id), other.frequents.getCount(id)));
+        other.sentimentProbabilities.forEach((sentiment, sum) -> sentimentProbabilities.merge(sentiment, sum, Double::sum));
+    }
+
+    /**
+     * Prints the counts of the bulk updates and the statistics of the scorer
+     */
+    private void printAnalysisSummary() {
+        System.out.printf("\nUpdated tweets: %d matched, %d modified\n", matchedCount, modifiedCount);
+        if (countClustersOnce)
+            System.out.println("Skipped " + skippedNearDuplicates.get() + " near-duplicate tweets, each cluster counted once");
+
+        if (sentimentScorer instanceof CachingSentimentScorer)
+            System.out.println(((CachingSentimentScorer) sentimentScorer).getStatistics());
+    }
+
+    /**
+     * Reports the first time the daily limit has been reached
+     */
+    private synchronized void reportDailyLimitReached() {
+        if (!dailyLimitReached) {
+            dailyLimitReached = true;
+            new TextProcessingDailyLimitException().printStackTrace();
+        }
     }
 
     /**
@@ -270,71 +635,58 @@ public class TweetSentimentAnalysis extends SentimentAnalysis {
         // Check if analysis has been made or not
         if (frequents.isEmpty()) {
             System.err.println("A call to analyze has not been made. Word count for repo will start now...");
-            repo.getCollectionIterable().forEach( (Block<TweetModel>) (TweetModel tweet) ->
-                    transformTweetAndCollectFrequents(tweet.getTweetText()));
+            try (Stream<TweetModel> tweets = repo.newQuery().setFields(TweetField.TWEET_TEXT).create().stream()) {
+                tweets.forEach(tweet -> transformTweetAndCollectFrequents(tweet.getTweetText()));
+            }
             System.err.println("Word counting finished.");
         }
 
-        // sort frequents map
-        LinkedHashMap<String, Integer> sortedFrequents = frequents
-                .entrySet()
-                .stream()
-                .sorted(Map.Entry.comparingByValue(Collections.reverseOrder()))
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        Map.Entry::getValue,
-                        (e1, e2) -> e1,
-                        LinkedHashMap::new
-                ));
+        // sort word IDs by frequency
+        int[] sortedIds = frequents.idsByCountDescending();
 
         // JFreeCharts datasets for e charts: all words line chart, top n words included stop words bar chart,
-        // top n words without stop words bar chart
-        DefaultCategoryDataset allWordsDataset = new DefaultCategoryDataset();
-        sortedFrequents.forEach( (String key, Integer val) -> allWordsDataset.addValue(val, "words", key));
-
-        DefaultXYDataset allWordsDatasetXY = new DefaultXYDataset();
-
-        ArrayList<Double> valuesList = new ArrayList<>();
-        sortedFrequents.values().forEach(i -> valuesList.add(Math.log10(i)));
-        double[] values = new double[valuesList.size()];
-        double[] indices = new double[valuesList.size()];
-        for (int i=0; i< valuesList.size(); i++) {
-            values[i] = valuesList.get(i);
-            indices[i] = Math.log10(i);
+        // top n words without stop words bar chart. All words series are downsampled to the points a chart can show,
+        // so that rendering does not depend on the vocabulary size
+        double[] counts = new double[sortedIds.length];
+        double[] ranks = new double[sortedIds.length];
+        for (int i=0; i< sortedIds.length; i++) {
+            counts[i] = frequents.getCount(sortedIds[i]);
+            ranks[i] = i + 1;
         }
-        indices[0] = 0;
 
-        allWordsDatasetXY.addSeries("words", new double[][] {indices, values});
+        DefaultXYDataset allWordsDataset = new DefaultXYDataset();
+        allWordsDataset.addSeries("words", Downsampling.lttb(ranks, counts, CHART_WIDTH));
+
+        DefaultXYDataset allWordsDatasetXY = new DefaultXYDataset();
+        allWordsDatasetXY.addSeries("words", Downsampling.logBuckets(counts, ZIPF_BUCKETS));
 
 
         DefaultCategoryDataset topNWithStopwordsDataset = new DefaultCategoryDataset();
         DefaultCategoryDataset topNWithoutStopwordsDataset = new DefaultCategoryDataset();
 
+        if (frequents instanceof SpaceSavingTermCounter) {
+            SpaceSavingTermCounter heavyHitters = (SpaceSavingTermCounter) frequents;
+            System.out.printf("Approximate counts of %d tracked out of %d counted words, each one overestimated by at most %d\n",
+                    heavyHitters.size(), heavyHitters.getTotal(), heavyHitters.getMaxError());
+        }
+
         // Fill in topN words datasets and print to screen word counts
         System.out.println("Top " + n + " words included stopwords:");
-        int k = n;
-        for (Map.Entry<String, Integer> e : sortedFrequents.entrySet()) {
-            if (k < 1)
-                break;
-            System.out.printf("%2d. %-18s %4d\n", n-k+1, e.getKey(), e.getValue());
-            topNWithStopwordsDataset.addValue(e.getValue(), e.getKey(), "word");
-            k--;
+        int k = 1;
+        for (int id : frequents.topIds(n, id -> true)) {
+            System.out.printf("%2d. %-18s %4d\n", k++, frequents.getTerm(id), frequents.getCount(id));
+            topNWithStopwordsDataset.addValue(frequents.getCount(id), frequents.getTerm(id), "word");
         }
         System.out.println("\nTop " + n + " words without stopwords:");
-        k = n;
-        for (Map.Entry<String, Integer> e : sortedFrequents.entrySet()) {
-            if (k < 1)
-                break;
-            if (!STOP_WORDS.contains(e.getKey())) {
-                System.out.printf("%2d. %-18s %4d\n", n-k+1, e.getKey(), e.getValue());
-                topNWithoutStopwordsDataset.addValue(e.getValue(), e.getKey(), "word");
-                k--;
-            }
+        k = 1;
+        for (int id : frequents.topIds(n, id -> !isStopWord(frequents.getTerm(id)))) {
+            System.out.printf("%2d. %-18s %4d\n", k++, frequents.getTerm(id), frequents.getCount(id));
+            topNWithoutStopwordsDataset.addValue(frequents.getCount(id), frequents.getTerm(id), "word");
         }
 
         // Create the charts
-        JFreeChart lineChartAllWords = ChartFactory.createLineChart("All words count",
-                "", "count", allWordsDataset,
+        JFreeChart lineChartAllWords = ChartFactory.createXYLineChart("All words count",
+                "word rank", "count", allWordsDataset,
                 PlotOrientation.VERTICAL, false, false, false );
         JFreeChart plotChartAllWords = ChartFactory.createXYLineChart("All words Zipf diagram",
                 "word rank (log10)", "word frequencylog(10)", allWordsDatasetXY);
@@ -343,23 +695,8 @@ public class TweetSentimentAnalysis extends SentimentAnalysis {
         JFreeChart barChartWithoutStopwords = ChartFactory.createBarChart("Top " + n + " words without stopwords",
                 "", "count", topNWithoutStopwordsDataset);
 
-        // Save charts as png files
-        try {
-            ChartUtils.saveChartAsPNG(Paths.get(chartsDirectory, lineChartAllWords.getTitle().getText().replace(" ", "_") + ".png").toFile(),
-                    lineChartAllWords, CHART_WIDTH, CHART_HEIGHT);
-
-            ChartUtils.saveChartAsPNG(Paths.get(chartsDirectory, plotChartAllWords.getTitle().getText().replace(" ", "_") + ".png").toFile(),
-                    plotChartAllWords, CHART_WIDTH, CHART_HEIGHT);
-
-            ChartUtils.saveChartAsPNG(Paths.get(chartsDirectory, barChartWithStopwords.getTitle().getText().replace(" ", "_") + ".png").toFile(),
-                    barChartWithStopwords, CHART_WIDTH, CHART_HEIGHT);
-            ChartUtils.saveChartAsPNG(Paths.get(chartsDirectory, barChartWithoutStopwords.getTitle().getText().replace(" ", "_") + ".png").toFile(),
-                    barChartWithoutStopwords, CHART_WIDTH, CHART_HEIGHT);
-
-            System.out.println("\nCharts saved in " + chartsDirectory);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        // Save charts, in parallel
+        exportCharts(chartsDirectory, lineChartAllWords, plotChartAllWords, barChartWithStopwords, barChartWithoutStopwords);
 
     }
 
@@ -371,7 +708,12 @@ public class TweetSentimentAnalysis extends SentimentAnalysis {
         // Check if analysis has been made or not
         if (sentimentProbabilities.isEmpty()) {
             System.err.println("A call to analyze has not been made. Start collecting now...");
-            repo.getCollectionIterable().forEach( (Block<TweetModel>) this::collectSentimentProbabilities);
+            try (Stream<TweetModel> tweets = repo.newQuery()
+                    .setFields(TweetField.POSITIVE_PROBABILITY, TweetField.NEGATIVE_PROBABILITY, TweetField.NEUTRAL_PROBABILITY)
+                    .create()
+                    .stream()) {
+                tweets.forEach(this::collectSentimentProbabilities);
+            }
             System.err.println("Sentiment probabilities collection finished.");
         }
 
@@ -382,14 +724,8 @@ public class TweetSentimentAnalysis extends SentimentAnalysis {
         // Create chart
         JFreeChart pieChart = ChartFactory.createPieChart("Sentiment Pie Chart", dataset);
 
-        // Save chart as png files
-        try {
-            ChartUtils.saveChartAsPNG(Paths.get(chartsDirectory, pieChart.getTitle().getText().replace(" ", "_") + ".png").toFile(),
-                    pieChart, CHART_WIDTH, CHART_HEIGHT);
-            System.out.println("\nPie Chart saved in " + chartsDirectory);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        // Save chart
+        exportCharts(chartsDirectory, pieChart);
     }
 
 }
@@ -1,35 +1,43 @@
 package sentimentAnalysis;
 
-import com.mongodb.Block;
-import com.mongodb.MongoClient;
 import com.mongodb.client.AggregateIterable;
-import com.mongodb.client.DistinctIterable;
-import com.mongodb.client.FindIterable;
-import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.model.Accumulators;
 import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.Projections;
 import domain.TweetModel;
-import org.bson.BsonInt64;
 import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.jfree.chart.ChartFactory;
-import org.jfree.chart.ChartUtils;
 import org.jfree.chart.JFreeChart;
 import org.jfree.data.xy.DefaultXYDataset;
 import repository.MongoRepository;
-import twitter4j.TwitterException;
+import utils.KllSketch;
 
-import java.io.IOException;
-import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
-import java.util.Scanner;
-
-import static com.mongodb.client.model.Filters.eq;
+import java.util.function.DoubleConsumer;
 
 public class UserSentimentAnalysis extends SentimentAnalysis {
 
+    /**
+     * Number of users of each server round-trip of the followers-friends aggregation
+     */
+    private static final int USERS_BATCH_SIZE = 1000;
+
+    /**
+     * Resolution of the Followers-Friends ratio CDF chart
+     */
+    private static final int CDF_POINTS = 200;
+
+    /**
+     * Suffix of the users sentiment scores collection, and ID of its state among the analysis states of repo
+     */
+    private static final String USERS_FEELINGS_SUFFIX = "_usersFeelings";
+    private static final String USERS_FEELINGS_STATE_ID = "usersFeelings";
+
     public UserSentimentAnalysis(MongoRepository repo) {
         super(repo);
     }
@@ -55,115 +63,158 @@ public class UserSentimentAnalysis extends SentimentAnalysis {
     }
 
     /**
-     * Creates a collection with name as repo's collection name with suffix '_usersFeelings', in which it stores user
-     * sentiment scores as they are calculated from {@link #calculateTotalUsersSentimentScore()}
+     * Calls {@link #storeUsersSentimentScore(boolean)} without rebuilding the collection
      */
     public void storeUsersSentimentScore() {
-        AggregateIterable<TweetModel> usersScore = calculateTotalUsersSentimentScore();
-
-        // put users in a list
-        List<Document> usersList = new ArrayList<>();
-        usersScore.forEach((Block<? super TweetModel>) (TweetModel tweetModel) ->
-                usersList.add(
-                        new Document("userID", tweetModel.getUserID())
-                                .append("avgPositiveProbability", tweetModel.getPositiveProbability())
-                                .append("avgNegativeProbability", tweetModel.getNegativeProbability())
-                                .append("avgNeutralProbability", tweetModel.getNeutralProbability())
-                ));
-
-        // Create new collection
-        MongoCollection<Document> collection = new MongoClient(repo.getHostname(), repo.getPort())
-                .getDatabase(repo.getDatabaseName())
-                .getCollection(repo.getCollectionName() + "_usersFeelings");
-
-        // Add users to collection. If collection already exists, ask for drop or not.
-        if (collection.count() == 0)
-            collection.insertMany(usersList);
-        else {
-            System.out.print(repo.getCollectionName() + "_usersFeelings already exists. Do you want to drop it and fill it again? (y/N): ");
-            String ans = new Scanner(System.in).nextLine();
-            if (ans.toLowerCase().equals("y")) {
-                collection.drop();
-                collection.insertMany(usersList);
-                System.out.println("Collection has been dropped and recreated");
-            } else
-                System.out.println("No changes were made in collection");
-        }
-
+        storeUsersSentimentScore(false);
     }
 
     /**
-     * Calculates Followers-Friends ratio for each user in collection
-     * @param userID twitter user ID
-     * @return ff ratio, unless friends count equals 0, then it returns -1
-     * @throws TwitterException
+     * Stores user sentiment scores, as they are calculated from {@link #calculateTotalUsersSentimentScore()},
+     * in a collection with name as repo's collection name with suffix '_usersFeelings'. Scores are aggregated and
+     * written by the server, without reading any user.
+     *
+     * The first time, or when rebuild is true, the collection is replaced with the scores of all users.
+     * Afterwards only the users with tweets collected or analyzed since the previous call are updated, which needs
+     * the $merge stage of MongoDB 4.2. Older servers rebuild the collection every time.
      */
-    public double calculateFollowersFriendsRatio(long userID) throws TwitterException {
+    public void storeUsersSentimentScore(boolean rebuild) {
 
-        // get all tweets from this user
-        FindIterable<TweetModel> it = repo.getCollectionIterable(eq("userID", userID));
+        String usersCollection = repo.getCollectionName() + USERS_FEELINGS_SUFFIX;
 
-        // keep only the first one
-        TweetModel tweetModel = it.first();
+        // Changes after this point are picked up by the next call
+        Date startTime = repo.getServerTime();
+        Long maxTweetID = repo.getMaxTweetID();
+        if (maxTweetID == null) {
+            System.out.println("No tweets in collection, " + usersCollection + " was not changed");
+            return;
+        }
 
-        // Get counts
-        int followers = tweetModel.getUserFollowersCount();
-        int friends = tweetModel.getUserFriendsCount();
+        Document state = repo.getAnalysisState(USERS_FEELINGS_STATE_ID);
+        boolean incremental = !rebuild && state != null && repo.supportsMergeStage();
+
+        if (incremental) {
+            repo.createAscendingIndex("userID");
+            repo.createAscendingIndex(MongoRepository.ANALYZED_AT);
+            repo.createTweetIdIndex();
+
+            repo.aggregateInto(Arrays.asList(
+                    // Users with new tweets or with tweets analyzed since the previous call
+                    Aggregates.match(Filters.or(
+                            Filters.gt("tweetID", state.getLong("lastTweetID")),
+                            Filters.gte(MongoRepository.ANALYZED_AT, state.getDate("startTime")))),
+                    Aggregates.group("$userID"),
+                    // Averages of all tweets of each of these users
+                    new Document("$lookup", new Document("from", repo.getCollectionName())
+                            .append("let", new Document("user", "$_id"))
+                            .append("pipeline", Arrays.asList(
+                                    new Document("$match", new Document("$expr",
+                                            new Document("$eq", Arrays.asList("$userID", "$$user")))),
+                                    averagesByUser(null)))
+                            .append("as", "averages")),
+                    Aggregates.unwind("$averages"),
+                    Aggregates.project(Projections.fields(
+                            Projections.computed("userID", "$_id"),
+                            Projections.computed("avgPositiveProbability", "$averages.avgPositiveProbability"),
+                            Projections.computed("avgNegativeProbability", "$averages.avgNegativeProbability"),
+                            Projections.computed("avgNeutralProbability", "$averages.avgNeutralProbability"))),
+                    new Document("$merge", new Document("into", usersCollection)
+                            .append("on", "_id")
+                            .append("whenMatched", "replace")
+                            .append("whenNotMatched", "insert"))));
+        } else {
+            repo.aggregateInto(Arrays.asList(
+                    averagesByUser("$userID"),
+                    Aggregates.project(Projections.fields(
+                            Projections.computed("userID", "$_id"),
+                            Projections.include("avgPositiveProbability", "avgNegativeProbability", "avgNeutralProbability"))),
+                    Aggregates.out(usersCollection)));
+        }
 
-        // Return ratio
-        if (friends == 0)
-            return -1;
+        repo.saveAnalysisState(USERS_FEELINGS_STATE_ID, new Document("lastTweetID", maxTweetID).append("startTime", startTime));
+        System.out.println(usersCollection + (incremental ? " has been updated" : " has been rebuilt"));
+    }
 
-        return ((double) followers) / friends;
+    /**
+     * $group stage of the average sentiment probabilities of tweets, grouped by id. A document rather than
+     * an {@link Aggregates} stage, so that it can be nested in the pipeline of a $lookup stage.
+     */
+    private static Document averagesByUser(String id) {
+        return new Document("$group", new Document("_id", id)
+                .append("avgPositiveProbability", new Document("$avg", "$positiveProbability"))
+                .append("avgNegativeProbability", new Document("$avg", "$negativeProbability"))
+                .append("avgNeutralProbability", new Document("$avg", "$neutralProbability")));
     }
 
     /**
-     * Produces cdf of Followers-Friends Ratio for this collection
+     * Calculates Followers-Friends ratio of all users in collection with a single streamed aggregation,
+     * which takes the counts of the first tweet of each user. Users with 0 friends are left out.
+     * @param action called with the ratio of each user
+     */
+    public void forEachFollowersFriendsRatio(DoubleConsumer action) {
+
+        // Aggregation: GROUPBY userID, FIRST(followers, friends)
+        List<Bson> pipeline = Arrays.asList(
+                Aggregates.group("$userID",
+                        Accumulators.first("followers", "$userFollowersCount"),
+                        Accumulators.first("friends", "$userFriendsCount")),
+                Aggregates.match(Filters.ne("friends", 0)));
+
+        try (MongoCursor<Document> users = repo.collectionAggregate(pipeline, Document.class)
+                .batchSize(USERS_BATCH_SIZE)
+                .iterator()) {
+            while (users.hasNext()) {
+                Document user = users.next();
+                Number friends = (Number) user.get("friends");
+                Number followers = (Number) user.get("followers");
+                if (friends != null && followers != null)
+                    action.accept(followers.doubleValue() / friends.doubleValue());
+            }
+        }
+    }
+
+    /**
+     * Returns a quantile sketch of the Followers-Friends ratios of all users in collection, built in one pass
+     * with memory independent of the number of users. Sketches of several collections can be merged.
+     */
+    public KllSketch followersFriendsRatioSketch() {
+        KllSketch sketch = new KllSketch();
+        forEachFollowersFriendsRatio(sketch::update);
+        return sketch;
+    }
+
+    /**
+     * Produces cdf of Followers-Friends Ratio for this collection and prints its main percentiles
      * @param chartsDirectory Directory in which plot will be saved
      */
     public void produceCumulativeDistributionFrequency(String chartsDirectory) {
+        produceCumulativeDistributionFrequency(followersFriendsRatioSketch(), chartsDirectory);
+    }
 
-        // Get an iterable with distinct userIDs from collection
-        DistinctIterable<BsonInt64> dit = repo.distinctCollection("userID", BsonInt64.class);
-
-        // Calculate cumulative followers-friends ratio for all users
-        List<Double> ffRatioCumm = new ArrayList<>();
-        ffRatioCumm.add(0.0);
-        dit.forEach((Block<? super BsonInt64>) (BsonInt64 userID) -> {
-            try {
-                double ratio = calculateFollowersFriendsRatio(userID.getValue());
-                if (ratio != -1)
-                    ffRatioCumm.add(ffRatioCumm.get(ffRatioCumm.size()-1) + ratio); // add value of previous + value of this
-            } catch (TwitterException e) {
-                if (e.getStatusCode() == 403 || e.getStatusCode() == 404)
-                    System.err.println("User " + userID.longValue() + " does not exist or have been removed");
-                else
-                    e.printStackTrace();
-            }
-        });
-        ffRatioCumm.remove(0);
-
-        // Create plot dataset
-        double[] values = new double[ffRatioCumm.size()];
-        double[] indices = new double[ffRatioCumm.size()];
-        for (int i=0; i< ffRatioCumm.size(); i++) {
-            values[i] = ffRatioCumm.get(i);
-            indices[i] = i+1;
+    /**
+     * Produces cdf of the Followers-Friends Ratio of sketch and prints its main percentiles
+     * @param chartsDirectory Directory in which plot will be saved
+     */
+    public void produceCumulativeDistributionFrequency(KllSketch sketch, String chartsDirectory) {
+
+        if (sketch.isEmpty()) {
+            System.err.println("No user with friends in collection, CDF was not produced");
+            return;
         }
+
+        double[] percentiles = sketch.getQuantiles(new double[] {0.5, 0.9, 0.99});
+        System.out.printf("Followers-Friends ratio of %d users: min %.3f, p50 %.3f, p90 %.3f, p99 %.3f, max %.3f\n",
+                sketch.getCount(), sketch.getMin(), percentiles[0], percentiles[1], percentiles[2], sketch.getMax());
+
+        // Empirical CDF: ratio of each rank
         DefaultXYDataset dataset = new DefaultXYDataset();
-        dataset.addSeries("ffRatio", new double[][] {indices, values});
+        dataset.addSeries("ffRatio", sketch.getCdfSeries(CDF_POINTS));
 
         // Create chart
-        JFreeChart cdf = ChartFactory.createXYLineChart("Followers-Friends Ratio CDF", "CDF", "", dataset);
-
-        // Save chart as png files
-        try {
-            ChartUtils.saveChartAsPNG(Paths.get(chartsDirectory, cdf.getTitle().getText().replace(" ", "_") + ".png").toFile(),
-                    cdf, CHART_WIDTH, CHART_HEIGHT);
-            System.out.println("\nPie Chart saved in " + chartsDirectory);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        JFreeChart cdf = ChartFactory.createXYLineChart("Followers-Friends Ratio CDF", "followers / friends", "CDF", dataset);
+
+        // Save chart
+        exportCharts(chartsDirectory, cdf);
     }
 
 }
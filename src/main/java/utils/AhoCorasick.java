@@ -0,0 +1,213 @@
+package utils;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton which finds all occurrences of a set of keywords in a text with a single scan.
+ * Keywords are matched literally, optionally ignoring case.
+ *
+ * The automaton is immutable after construction and may be shared between threads. Callers walk it with
+ * {@link #next(int, char)}, starting from {@link #ROOT}, and ask each state for the keywords ending there.
+ */
+public class AhoCorasick {
+
+    public static final int ROOT = 0;
+
+    private final boolean ignoreCase;
+
+    /**
+     * Trie transitions of each state, as sorted characters and their target states
+     */
+    private char[][] labels;
+    private int[][] targets;
+
+    /**
+     * Failure link of each state: the state of the longest proper suffix which is also in the trie
+     */
+    private int[] fail;
+
+    /**
+     * Keyword index ending at each state, -1 if none, and for each keyword the next keyword ending at the same state,
+     * e.g. a duplicate or a keyword equal when case is ignored, -1 if none
+     */
+    private int[] keyword;
+    private final int[] sameKeyword;
+
+    /**
+     * Nearest state on the failure chain which ends a keyword, -1 if none
+     */
+    private int[] dictionary;
+
+    /**
+     * Length of the path from root to each state
+     */
+    private int[] depth;
+
+    private int stateCount;
+
+    private final int keywordCount;
+
+    /**
+     * Builds the automaton of keywords. Empty keywords are ignored.
+     */
+    public AhoCorasick(List<String> keywords, boolean ignoreCase) {
+        this.ignoreCase = ignoreCase;
+        this.keywordCount = keywords.size();
+
+        int capacity = 1;
+        for (String k : keywords)
+            capacity += k.length();
+
+        labels = new char[capacity][];
+        targets = new int[capacity][];
+        fail = new int[capacity];
+        keyword = new int[capacity];
+        dictionary = new int[capacity];
+        depth = new int[capacity];
+        sameKeyword = new int[keywords.size()];
+        Arrays.fill(keyword, -1);
+        Arrays.fill(sameKeyword, -1);
+        Arrays.fill(dictionary, -1);
+        newState(0);
+
+        for (int i = 0; i < keywords.size(); i++) {
+            String k = keywords.get(i);
+            if (k.isEmpty())
+                continue;
+
+            int state = ROOT;
+            for (int j = 0; j < k.length(); j++) {
+                char c = fold(k.charAt(j));
+                int target = transition(state, c);
+                if (target < 0)
+                    target = addTransition(state, c, newState(depth[state] + 1));
+                state = target;
+            }
+            sameKeyword[i] = keyword[state];
+            keyword[state] = i;
+        }
+
+        buildFailureLinks();
+    }
+
+    /**
+     * Number of keywords the automaton was built from, including ignored empty ones
+     */
+    public int getKeywordCount() {
+        return keywordCount;
+    }
+
+    /**
+     * Returns the state reached from state on character c
+     */
+    public int next(int state, char c) {
+        c = fold(c);
+        while (true) {
+            int target = transition(state, c);
+            if (target >= 0)
+                return target;
+            if (state == ROOT)
+                return ROOT;
+            state = fail[state];
+        }
+    }
+
+    /**
+     * Returns the length of the longest keyword ending at state, 0 if no keyword ends there
+     */
+    public int longestMatchLength(int state) {
+        if (keyword[state] >= 0)
+            return depth[state];
+        int d = dictionary[state];
+        return d < 0 ? 0 : depth[d];
+    }
+
+    /**
+     * Marks in found the index of every keyword which occurs in text
+     * @return number of distinct keywords found
+     */
+    public int findAll(CharSequence text, boolean[] found) {
+        int count = 0;
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            state = next(state, text.charAt(i));
+            for (int s = keyword[state] >= 0 ? state : dictionary[state]; s >= 0; s = dictionary[s]) {
+                for (int k = keyword[s]; k >= 0; k = sameKeyword[k]) {
+                    if (!found[k]) {
+                        found[k] = true;
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private char fold(char c) {
+        return ignoreCase ? Character.toLowerCase(c) : c;
+    }
+
+    private int newState(int stateDepth) {
+        int state = stateCount++;
+        labels[state] = new char[0];
+        targets[state] = new int[0];
+        depth[state] = stateDepth;
+        return state;
+    }
+
+    private int transition(int state, char c) {
+        int i = Arrays.binarySearch(labels[state], c);
+        return i >= 0 ? targets[state][i] : -1;
+    }
+
+    private int addTransition(int state, char c, int target) {
+        char[] l = labels[state];
+        int[] t = targets[state];
+        int at = -(Arrays.binarySearch(l, c) + 1);
+
+        char[] newLabels = new char[l.length + 1];
+        int[] newTargets = new int[t.length + 1];
+        System.arraycopy(l, 0, newLabels, 0, at);
+        System.arraycopy(t, 0, newTargets, 0, at);
+        newLabels[at] = c;
+        newTargets[at] = target;
+        System.arraycopy(l, at, newLabels, at + 1, l.length - at);
+        System.arraycopy(t, at, newTargets, at + 1, t.length - at);
+
+        labels[state] = newLabels;
+        targets[state] = newTargets;
+        return target;
+    }
+
+    /**
+     * Breadth first computation of failure and dictionary links
+     */
+    private void buildFailureLinks() {
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : targets[ROOT]) {
+            fail[child] = ROOT;
+            queue.add(child);
+        }
+
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int i = 0; i < labels[state].length; i++) {
+                char c = labels[state][i];
+                int child = targets[state][i];
+
+                int f = fail[state];
+                while (f != ROOT && transition(f, c) < 0)
+                    f = fail[f];
+                int t = transition(f, c);
+                fail[child] = t >= 0 && t != child ? t : ROOT;
+
+                int fc = fail[child];
+                dictionary[child] = keyword[fc] >= 0 ? fc : dictionary[fc];
+                queue.add(child);
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Set of long keys which answers "maybe present" or "definitely absent", in a few bits per key.
+ * Each key sets k bits of a bit array, chosen by double hashing; a key is maybe present if all its bits are set.
+ *
+ * The filter is scalable (Almeida et al.): when a stage holds as many keys as it was sized for, a new stage twice
+ * as large with half the false positive probability is added, so the overall false positive probability stays
+ * below the given one however many keys are added. Bits are set with CAS, so keys can be added
+ * and checked by several threads without locking.
+ */
+public class BloomFilter {
+
+    /**
+     * False positive probability ratio of a stage to the previous one
+     */
+    private static final double TIGHTENING_RATIO = 0.5;
+
+    private static final int GROWTH_FACTOR = 2;
+
+    private final double falsePositiveProbability;
+
+    /**
+     * Stages, the last one receives the new keys. Replaced as a whole when a stage is added.
+     */
+    private volatile Stage[] stages;
+
+    /**
+     * @param expectedKeys keys the first stage is sized for
+     * @param falsePositiveProbability probability that an absent key is reported maybe present, e.g. 0.01
+     */
+    public BloomFilter(long expectedKeys, double falsePositiveProbability) {
+        if (falsePositiveProbability <= 0 || falsePositiveProbability >= 1)
+            throw new IllegalArgumentException("False positive probability must be between 0 and 1, was " + falsePositiveProbability);
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.stages = new Stage[] {new Stage(Math.max(64, expectedKeys), falsePositiveProbability * (1 - TIGHTENING_RATIO))};
+    }
+
+    /**
+     * Returns false if key was definitely never added, true if it may have been
+     */
+    public boolean mightContain(long key) {
+        long h1 = mix(key);
+        long h2 = mix(h1 ^ key);
+        for (Stage stage : stages)
+            if (stage.mightContain(h1, h2))
+                return true;
+        return false;
+    }
+
+    /**
+     * Adds key to the filter
+     * @return true if key was definitely not in the filter, false if it may have been added before
+     */
+    public boolean put(long key) {
+        long h1 = mix(key);
+        long h2 = mix(h1 ^ key);
+
+        Stage[] current = stages;
+        for (Stage stage : current)
+            if (stage.mightContain(h1, h2))
+                return false;
+
+        Stage last = current[current.length - 1];
+        if (!last.put(h1, h2))
+            return false;
+        if (last.count.incrementAndGet() >= last.capacity)
+            grow(last);
+        return true;
+    }
+
+    /**
+     * Returns the number of keys added, which were not reported maybe present
+     */
+    public long size() {
+        long size = 0;
+        for (Stage stage : stages)
+            size += stage.count.get();
+        return size;
+    }
+
+    /**
+     * Returns the memory of the bit arrays in bytes
+     */
+    public long getBitsSize() {
+        long bytes = 0;
+        for (Stage stage : stages)
+            bytes += stage.bits.length() * 8L;
+        return bytes;
+    }
+
+    public double getFalsePositiveProbability() {
+        return falsePositiveProbability;
+    }
+
+    /**
+     * Adds a stage after full, unless another thread already did
+     */
+    private synchronized void grow(Stage full) {
+        Stage[] current = stages;
+        if (current[current.length - 1] != full)
+            return;
+
+        Stage[] grown = Arrays.copyOf(current, current.length + 1);
+        grown[current.length] = new Stage(full.capacity * GROWTH_FACTOR, full.falsePositiveProbability * TIGHTENING_RATIO);
+        stages = grown;
+    }
+
+    /**
+     * Murmur3 64-bit finalizer, spreads the bits of key over the whole long
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /**
+     * Plain Bloom filter, sized for capacity keys
+     */
+    private static class Stage {
+
+        private final long capacity;
+        private final double falsePositiveProbability;
+        private final AtomicLongArray bits;
+        private final long bitCount;
+        private final int hashCount;
+        private final AtomicLong count = new AtomicLong();
+
+        Stage(long capacity, double falsePositiveProbability) {
+            this.capacity = capacity;
+            this.falsePositiveProbability = falsePositiveProbability;
+
+            // Optimal bits and hash functions for capacity keys at the false positive probability
+            double ln2 = Math.log(2);
+            long words = Math.max(1, (long) Math.ceil(-capacity * Math.log(falsePositiveProbability) / (ln2 * ln2) / 64));
+            if (words > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Bloom filter stage too large: " + capacity + " keys");
+
+            this.bits = new AtomicLongArray((int) words);
+            this.bitCount = words * 64;
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * ln2));
+        }
+
+        boolean mightContain(long h1, long h2) {
+            for (int i = 0; i < hashCount; i++) {
+                long bit = index(h1, h2, i);
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * Sets the bits of a key
+         * @return true if at least one bit was not set
+         */
+        boolean put(long h1, long h2) {
+            boolean changed = false;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = index(h1, h2, i);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                while (true) {
+                    long value = bits.get(word);
+                    if ((value & mask) != 0)
+                        break;
+                    if (bits.compareAndSet(word, value, value | mask)) {
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+            return changed;
+        }
+
+        private long index(long h1, long h2, int i) {
+            return ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * Reduces series to a number of points a chart can actually show, so that rendering time does not depend on
+ * the size of the data. Series are pairs of primitive arrays, x and y, ready for an XY dataset.
+ */
+public class Downsampling {
+
+    private Downsampling() {}
+
+    /**
+     * Largest-Triangle-Three-Buckets downsampling of a line, which keeps its visual shape: the first and last points
+     * are kept and every bucket in between is represented by the point forming the largest triangle with the point
+     * kept from the previous bucket and the average of the next bucket.
+     * @param x x values, in ascending order
+     * @param y y values
+     * @param threshold number of points of the result, at least 3
+     * @return x and y of the kept points, or the given series if it has no more than threshold points
+     */
+    public static double[][] lttb(double[] x, double[] y, int threshold) {
+        int length = x.length;
+        if (threshold >= length || threshold < 3)
+            return new double[][] {x, y};
+
+        double[] sampledX = new double[threshold];
+        double[] sampledY = new double[threshold];
+        int sampled = 0;
+
+        // Buckets of the points between the first and the last one
+        double bucketSize = (double) (length - 2) / (threshold - 2);
+
+        int a = 0;
+        sampledX[sampled] = x[a];
+        sampledY[sampled++] = y[a];
+
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+
+            // Average of the next bucket, the last point for the last bucket
+            int nextStart = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+            int nextEnd = Math.min((int) Math.floor((bucket + 2) * bucketSize) + 1, length);
+            double averageX = 0;
+            double averageY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                averageX += x[i];
+                averageY += y[i];
+            }
+            int nextCount = nextEnd - nextStart;
+            averageX /= nextCount;
+            averageY /= nextCount;
+
+            // Point of this bucket forming the largest triangle
+            int start = (int) Math.floor(bucket * bucketSize) + 1;
+            int end = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+            double maxArea = -1;
+            int next = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((x[a] - averageX) * (y[i] - y[a]) - (x[a] - x[i]) * (averageY - y[a]));
+                if (area > maxArea) {
+                    maxArea = area;
+                    next = i;
+                }
+            }
+
+            sampledX[sampled] = x[next];
+            sampledY[sampled++] = y[next];
+            a = next;
+        }
+
+        sampledX[sampled] = x[length - 1];
+        sampledY[sampled] = y[length - 1];
+
+        return new double[][] {sampledX, sampledY};
+    }
+
+    /**
+     * Log-log series of values by rank, as in a Zipf diagram, with ranks grouped in log-spaced buckets.
+     * Each bucket is represented by the log10 of its geometric mean rank and of its mean value.
+     * Buckets of the first ranks hold a single rank, so the head of the series is kept as it is.
+     * @param values positive values, the value of rank i + 1 at index i
+     * @param buckets max number of buckets
+     * @return log10 of ranks and log10 of values
+     */
+    public static double[][] logBuckets(double[] values, int buckets) {
+        int length = values.length;
+        if (length == 0)
+            return new double[][] {new double[0], new double[0]};
+
+        buckets = Math.max(1, buckets);
+        double logStep = Math.log(length) / buckets;
+
+        double[] logRanks = new double[Math.min(buckets, length)];
+        double[] logValues = new double[logRanks.length];
+        int count = 0;
+
+        int start = 0;
+        for (int bucket = 1; bucket <= buckets && start < length; bucket++) {
+
+            // Bucket ends at rank e^(bucket * logStep), and holds at least one rank
+            int end = bucket == buckets ? length : (int) Math.min(length, Math.max(start + 1, Math.round(Math.exp(bucket * logStep))));
+            if (end <= start)
+                continue;
+
+            double sum = 0;
+            for (int i = start; i < end; i++)
+                sum += values[i];
+
+            // Ranks are start + 1 to end
+            logRanks[count] = (Math.log10(start + 1) + Math.log10(end)) / 2;
+            logValues[count] = Math.log10(sum / (end - start));
+            count++;
+            start = end;
+        }
+
+        return new double[][] {Arrays.copyOf(logRanks, count), Arrays.copyOf(logValues, count)};
+    }
+}
@@ -0,0 +1,335 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Quantile sketch of a stream of values, based on the KLL algorithm (Karnin, Lang and Liberty).
+ * Values are kept in a hierarchy of compactors, where each value of level h stands for 2^h values of the stream.
+ * When the sketch is full, the lowest level which exceeds its capacity is sorted and every other value,
+ * starting at a random offset, is promoted to the next level; the rest are dropped.
+ *
+ * Memory is O(k log(n / k)) values for n values. Ranks are estimated within about 1.7 / k of n, with high
+ * probability, e.g. 1% for the default k. Sketches of disjoint streams can be merged into the sketch of their union.
+ * Not thread safe.
+ */
+public class KllSketch {
+
+    public static final int DEFAULT_K = 200;
+
+    /**
+     * Capacity ratio of a level to the level above it
+     */
+    private static final double C = 2.0 / 3.0;
+
+    private static final int MIN_CAPACITY = 2;
+
+    private final int k;
+    private final Random random;
+
+    /**
+     * Values of each level, level 0 receives the stream
+     */
+    private double[][] levels = new double[1][];
+    private int[] sizes = new int[1];
+
+    /**
+     * Capacity of each level, and number of values kept and capacity of all levels
+     */
+    private int[] capacities;
+    private int retained = 0;
+    private int totalCapacity;
+
+    private long count = 0;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    public KllSketch() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * @param k accuracy parameter, the capacity of the top level
+     */
+    public KllSketch(int k) {
+        this(k, new Random());
+    }
+
+    /**
+     * @param random source of the compaction offsets, seeded for reproducible sketches
+     */
+    public KllSketch(int k, Random random) {
+        if (k < MIN_CAPACITY)
+            throw new IllegalArgumentException("k must be at least " + MIN_CAPACITY + ", was " + k);
+        this.k = k;
+        this.random = random;
+        this.levels[0] = new double[k];
+        updateCapacities();
+    }
+
+    /**
+     * Adds value to the sketch. NaN values are ignored.
+     */
+    public void update(double value) {
+        if (Double.isNaN(value))
+            return;
+
+        if (count == 0) {
+            min = value;
+            max = value;
+        } else {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        count++;
+
+        append(0, value);
+        compress();
+    }
+
+    /**
+     * Adds the values of other sketch to this one, as if they had been added with {@link #update(double)}
+     */
+    public void merge(KllSketch other) {
+        if (other.count == 0)
+            return;
+
+        if (count == 0) {
+            min = other.min;
+            max = other.max;
+        } else {
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+        count += other.count;
+
+        for (int h = 0; h < other.levels.length; h++)
+            for (int i = 0; i < other.sizes[h]; i++)
+                append(h, other.levels[h][i]);
+        compress();
+    }
+
+    /**
+     * Returns the number of values added to the sketch
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Returns the smallest value added, NaN if the sketch is empty
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Returns the largest value added, NaN if the sketch is empty
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the approximate value of rank q, e.g. 0.5 for the median
+     * @param q rank between 0 and 1
+     * @return the value, NaN if the sketch is empty
+     */
+    public double getQuantile(double q) {
+        return getQuantiles(new double[] {q})[0];
+    }
+
+    /**
+     * Returns the approximate values of several ranks with a single sort of the sketch
+     * @param qs ranks between 0 and 1
+     */
+    public double[] getQuantiles(double[] qs) {
+        double[] quantiles = new double[qs.length];
+        if (count == 0) {
+            Arrays.fill(quantiles, Double.NaN);
+            return quantiles;
+        }
+
+        SortedView view = sortedView();
+        for (int i = 0; i < qs.length; i++) {
+            double q = qs[i];
+            if (q < 0 || q > 1)
+                throw new IllegalArgumentException("Rank must be between 0 and 1, was " + q);
+            if (q == 0) {
+                quantiles[i] = min;
+            } else if (q == 1) {
+                quantiles[i] = max;
+            } else {
+                long rank = (long) Math.ceil(q * count);
+                int at = Arrays.binarySearch(view.cumulativeWeights, rank);
+                if (at < 0)
+                    at = -at - 1;
+                quantiles[i] = view.values[Math.min(at, view.values.length - 1)];
+            }
+        }
+        return quantiles;
+    }
+
+    /**
+     * Returns the approximate fraction of the values which are less than or equal to value
+     */
+    public double getCdf(double value) {
+        if (count == 0)
+            return Double.NaN;
+
+        SortedView view = sortedView();
+        int at = upperBound(view.values, value);
+        return at == 0 ? 0.0 : (double) view.cumulativeWeights[at - 1] / count;
+    }
+
+    /**
+     * Returns the empirical CDF at points evenly spaced ranks: for i in 0..points-1, the value of rank
+     * i / (points - 1) and that rank
+     * @return values and ranks, as the two rows of an XY series
+     */
+    public double[][] getCdfSeries(int points) {
+        points = Math.max(2, points);
+        double[] ranks = new double[points];
+        for (int i = 0; i < points; i++)
+            ranks[i] = (double) i / (points - 1);
+        return new double[][] {getQuantiles(ranks), ranks};
+    }
+
+    /**
+     * Returns the number of values kept by the sketch
+     */
+    public int getRetained() {
+        return retained;
+    }
+
+    private void append(int level, double value) {
+        if (level == levels.length) {
+            levels = Arrays.copyOf(levels, level + 1);
+            sizes = Arrays.copyOf(sizes, level + 1);
+            updateCapacities();
+            levels[level] = new double[capacities[level]];
+        }
+        if (sizes[level] == levels[level].length)
+            levels[level] = Arrays.copyOf(levels[level], Math.max(MIN_CAPACITY, sizes[level] * 2));
+        levels[level][sizes[level]++] = value;
+        retained++;
+    }
+
+    /**
+     * Compacts levels while the sketch keeps more values than its total capacity
+     */
+    private void compress() {
+        while (retained > totalCapacity) {
+            for (int h = 0; h < levels.length; h++) {
+                if (sizes[h] >= capacities[h]) {
+                    compact(h);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Promotes every other sorted value of level h to level h + 1. With an odd size, one value stays in level h.
+     */
+    private void compact(int h) {
+        double[] level = levels[h];
+        int size = sizes[h];
+        Arrays.sort(level, 0, size);
+
+        // An odd value out stays, the largest one
+        int pairs = size / 2;
+        double leftOver = size % 2 == 1 ? level[size - 1] : Double.NaN;
+
+        int offset = random.nextBoolean() ? 1 : 0;
+        double[] promoted = new double[pairs];
+        for (int i = 0; i < pairs; i++)
+            promoted[i] = level[2 * i + offset];
+
+        sizes[h] = 0;
+        retained -= size;
+        if (size % 2 == 1) {
+            retained++;
+            level[sizes[h]++] = leftOver;
+        }
+
+        for (double value : promoted)
+            append(h + 1, value);
+    }
+
+    /**
+     * Sets the capacity of each level: k for the top level, shrinking geometrically towards level 0
+     */
+    private void updateCapacities() {
+        capacities = new int[levels.length];
+        totalCapacity = 0;
+        for (int h = 0; h < levels.length; h++) {
+            int depth = levels.length - 1 - h;
+            capacities[h] = Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(C, depth)));
+            totalCapacity += capacities[h];
+        }
+    }
+
+    /**
+     * Returns the values of all levels sorted, along with their cumulative weights
+     */
+    private SortedView sortedView() {
+        double[] values = new double[retained];
+        long[] weights = new long[retained];
+
+        int n = 0;
+        for (int h = 0; h < levels.length; h++) {
+            for (int i = 0; i < sizes[h]; i++) {
+                values[n] = levels[h][i];
+                weights[n] = 1L << h;
+                n++;
+            }
+        }
+
+        // Sort values and weights together, by value
+        Integer[] order = new Integer[retained];
+        for (int i = 0; i < retained; i++)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+
+        SortedView view = new SortedView(retained);
+        long cumulative = 0;
+        for (int i = 0; i < retained; i++) {
+            view.values[i] = values[order[i]];
+            cumulative += weights[order[i]];
+            view.cumulativeWeights[i] = cumulative;
+        }
+        return view;
+    }
+
+    /**
+     * Returns the index of the first value greater than value
+     */
+    private static int upperBound(double[] values, double value) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] <= value)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    private static class SortedView {
+
+        private final double[] values;
+        private final long[] cumulativeWeights;
+
+        SortedView(int size) {
+            this.values = new double[size];
+            this.cumulativeWeights = new long[size];
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue for a single producer and any number of consumers, on a ring of slots.
+ * Each slot has a sequence number which tells whether it is ready to be written, for the producer,
+ * or to be read, for the consumers (D. Vyukov's bounded queue). Consumers claim a slot by advancing
+ * the head with a CAS, the producer advances the tail alone and never waits for a lock.
+ *
+ * Only one thread may call {@link #offer(Object)}, {@link #poll()} may be called by any thread.
+ */
+public class RingBuffer<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> slots;
+
+    /**
+     * Sequence of each slot: its index in the stream when it can be written, that index + 1 when it can be read
+     */
+    private final AtomicLongArray sequences;
+
+    /**
+     * Index of the next element to read and of the next element to write
+     */
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param capacity max number of elements, rounded up to a power of 2
+     */
+    public RingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30)
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30, was " + capacity);
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+            size <<= 1;
+
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+            sequences.set(i, i);
+    }
+
+    /**
+     * Adds element at the tail, if the buffer is not full. Called by the producer thread only.
+     * @return false if the buffer is full
+     */
+    public boolean offer(E element) {
+        if (element == null)
+            throw new NullPointerException();
+
+        long position = tail.get();
+        int index = (int) position & mask;
+
+        // Slot is still held by the element of the previous lap
+        if (sequences.get(index) != position)
+            return false;
+
+        slots.lazySet(index, element);
+        sequences.lazySet(index, position + 1);
+        tail.lazySet(position + 1);
+        return true;
+    }
+
+    /**
+     * Removes the element at the head
+     * @return the element, null if the buffer is empty
+     */
+    public E poll() {
+        while (true) {
+            long position = head.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    E element = slots.get(index);
+                    slots.lazySet(index, null);
+                    // Free the slot for the next lap
+                    sequences.lazySet(index, position + mask + 1);
+                    return element;
+                }
+            } else if (difference < 0) {
+                return null;
+            }
+            // Otherwise another consumer took the slot, retry with the new head
+        }
+    }
+
+    /**
+     * Returns the number of elements in the buffer, exact only when producer and consumers are idle
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
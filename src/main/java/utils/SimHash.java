@@ -0,0 +1,92 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * 64-bit SimHash (Charikar) of a text, built one word at a time.
+ * Each word is hashed to 64 bits, and each bit of the fingerprint is the majority vote of that bit over the words,
+ * so texts sharing most of their words have fingerprints differing in few bits, see {@link #distance(long, long)}.
+ *
+ * An instance reuses its counters, so each thread needs its own.
+ */
+public class SimHash {
+
+    private final int[] votes = new int[64];
+
+    private int words = 0;
+
+    /**
+     * Starts a new text
+     */
+    public void reset() {
+        Arrays.fill(votes, 0);
+        words = 0;
+    }
+
+    /**
+     * Adds the word buffer[start, end) to the text
+     */
+    public void add(char[] buffer, int start, int end) {
+        // FNV-1a, then mixed so that every bit depends on every char
+        long hash = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            hash ^= buffer[i];
+            hash *= 0x100000001b3L;
+        }
+        hash = mix(hash);
+
+        for (int bit = 0; bit < 64; bit++)
+            votes[bit] += (int) ((hash >>> bit) & 1) * 2 - 1;
+        words++;
+    }
+
+    /**
+     * Returns the fingerprint of the words added since the last reset, 0 for no words
+     */
+    public long fingerprint() {
+        if (words == 0)
+            return 0;
+
+        long fingerprint = 0;
+        for (int bit = 0; bit < 64; bit++)
+            if (votes[bit] > 0)
+                fingerprint |= 1L << bit;
+        return fingerprint;
+    }
+
+    /**
+     * Returns the fingerprint of a text of space separated words
+     */
+    public static long of(String text) {
+        SimHash simHash = new SimHash();
+        char[] chars = text.toCharArray();
+        int start = 0;
+        for (int i = 0; i <= chars.length; i++) {
+            if (i == chars.length || chars[i] == ' ') {
+                if (i > start)
+                    simHash.add(chars, start, i);
+                start = i + 1;
+            }
+        }
+        return simHash.fingerprint();
+    }
+
+    /**
+     * Returns the number of differing bits of two fingerprints
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * Murmur3 64-bit finalizer
+     */
+    static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
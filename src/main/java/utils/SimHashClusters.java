@@ -0,0 +1,231 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * Clusters of near-duplicate {@link SimHash} fingerprints: fingerprints at most maxDistance bits apart are in the
+ * same cluster, and so are, transitively, their own near-duplicates.
+ *
+ * Candidates are found by LSH banding (Manku et al.): fingerprints are split in maxDistance + 3 bands, so two
+ * fingerprints maxDistance bits apart still share at least 3 whole bands. For each choice of 3 bands, fingerprints
+ * are sorted by a hash of these bands and only fingerprints of the same run are compared. This takes
+ * C(maxDistance + 3, 3) sorts of a long array, O(n log n) each, and 16 bytes per fingerprint plus 8 during a pass.
+ *
+ * Within a run, fingerprints are compared with a few representatives of the run only, so that a cluster of a
+ * million copies is not compared pairwise. A near-duplicate of a member which is not a representative
+ * can be missed in that run, it is usually found in another one.
+ */
+public class SimHashClusters {
+
+    /**
+     * Whole bands two candidate fingerprints share
+     */
+    private static final int KEY_BANDS = 3;
+
+    /**
+     * Fingerprints of a run each new fingerprint is compared with
+     */
+    private static final int MAX_REPRESENTATIVES = 8;
+
+    private final int maxDistance;
+
+    private long[] ids = new long[1024];
+    private long[] fingerprints = new long[1024];
+    private int size = 0;
+
+    /**
+     * Union-find forest of the fingerprints, null until {@link #cluster()}. The root of a cluster holds its size
+     * and its smallest id.
+     */
+    private int[] parent;
+    private int[] clusterSizes;
+    private long[] clusterIDs;
+
+    /**
+     * @param maxDistance max differing bits of near-duplicate fingerprints, 3 finds tweets which differ by
+     *                    a word or two
+     */
+    public SimHashClusters(int maxDistance) {
+        // Beyond 6, the 3 key bands are so narrow that runs are mostly unrelated fingerprints
+        if (maxDistance < 0 || maxDistance > 6)
+            throw new IllegalArgumentException("Max distance must be between 0 and 6, was " + maxDistance);
+        this.maxDistance = maxDistance;
+    }
+
+    /**
+     * Adds the fingerprint of item id
+     * @return the index of the fingerprint, used to read its cluster after {@link #cluster()}
+     */
+    public int add(long id, long fingerprint) {
+        if (parent != null)
+            throw new IllegalStateException("Fingerprints have already been clustered");
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            fingerprints = Arrays.copyOf(fingerprints, size * 2);
+        }
+        ids[size] = id;
+        fingerprints[size] = fingerprint;
+        return size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Groups the added fingerprints in clusters
+     */
+    public void cluster() {
+        parent = new int[size];
+        clusterSizes = new int[size];
+        for (int i = 0; i < size; i++) {
+            parent[i] = i;
+            clusterSizes[i] = 1;
+        }
+
+        long[] bandMasks = bandMasks(maxDistance + KEY_BANDS);
+        long[] runs = new long[size];
+        int[] representatives = new int[MAX_REPRESENTATIVES];
+
+        for (int a = 0; a < bandMasks.length; a++)
+            for (int b = a + 1; b < bandMasks.length; b++)
+                for (int c = b + 1; c < bandMasks.length; c++) {
+                    long mask = bandMasks[a] | bandMasks[b] | bandMasks[c];
+
+                    // Hash of the key bands in the high half, index in the low half
+                    for (int i = 0; i < size; i++)
+                        runs[i] = (SimHash.mix(fingerprints[i] & mask) & 0xffffffff00000000L) | i;
+                    Arrays.sort(runs);
+
+                    int count = 0;
+                    for (int r = 0; r < size; r++) {
+                        if (r == 0 || (runs[r] >>> 32) != (runs[r - 1] >>> 32))
+                            count = 0;
+                        int i = (int) runs[r];
+                        if (!joinRepresentative(i, representatives, count) && count < MAX_REPRESENTATIVES)
+                            representatives[count++] = i;
+                    }
+                }
+
+        clusterIDs = new long[size];
+        Arrays.fill(clusterIDs, Long.MAX_VALUE);
+        for (int i = 0; i < size; i++) {
+            int root = find(i);
+            clusterIDs[root] = Math.min(clusterIDs[root], ids[i]);
+        }
+    }
+
+    /**
+     * Returns the id of the fingerprint at index
+     */
+    public long getID(int index) {
+        return ids[index];
+    }
+
+    /**
+     * Returns the cluster of the fingerprint at index, the smallest id of the cluster, 0 if it has no near-duplicates
+     */
+    public long getClusterID(int index) {
+        int root = find(index);
+        return clusterSizes[root] > 1 ? clusterIDs[root] : 0;
+    }
+
+    /**
+     * Returns the number of fingerprints in the cluster of the fingerprint at index
+     */
+    public int getClusterSize(int index) {
+        return clusterSizes[find(index)];
+    }
+
+    /**
+     * Returns the number of clusters of more than one fingerprint
+     */
+    public int getClusterCount() {
+        int clusters = 0;
+        for (int i = 0; i < size; i++)
+            if (parent[i] == i && clusterSizes[i] > 1)
+                clusters++;
+        return clusters;
+    }
+
+    /**
+     * Returns the number of fingerprints which are near-duplicates of the first one of their cluster
+     */
+    public int getNearDuplicateCount() {
+        int nearDuplicates = 0;
+        for (int i = 0; i < size; i++)
+            if (parent[i] == i)
+                nearDuplicates += clusterSizes[i] - 1;
+        return nearDuplicates;
+    }
+
+    /**
+     * Returns the indexes of a fingerprint of each of the n largest clusters, largest first
+     */
+    public int[] largestClusters(int n) {
+        long[] roots = new long[size];
+        int count = 0;
+        for (int i = 0; i < size; i++)
+            if (parent[i] == i && clusterSizes[i] > 1)
+                roots[count++] = ((long) clusterSizes[i] << 32) | i;
+
+        Arrays.sort(roots, 0, count);
+        int[] largest = new int[Math.min(n, count)];
+        for (int k = 0; k < largest.length; k++)
+            largest[k] = (int) roots[count - 1 - k];
+        return largest;
+    }
+
+    /**
+     * Joins fingerprint i to the cluster of the first representative of its run it is a near-duplicate of
+     * @return false if it is a near-duplicate of none of them
+     */
+    private boolean joinRepresentative(int i, int[] representatives, int count) {
+        for (int k = 0; k < count; k++) {
+            int j = representatives[k];
+            if (find(i) == find(j))
+                return true;
+            if (SimHash.distance(fingerprints[i], fingerprints[j]) <= maxDistance) {
+                union(i, j);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int find(int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private void union(int i, int j) {
+        int a = find(i);
+        int b = find(j);
+        if (a == b)
+            return;
+        if (clusterSizes[a] < clusterSizes[b]) {
+            int t = a;
+            a = b;
+            b = t;
+        }
+        parent[b] = a;
+        clusterSizes[a] += clusterSizes[b];
+    }
+
+    /**
+     * Splits the 64 bits in bands of nearly equal widths
+     */
+    private static long[] bandMasks(int bands) {
+        long[] masks = new long[bands];
+        int start = 0;
+        for (int band = 0; band < bands; band++) {
+            int width = (64 - start) / (bands - band);
+            masks[band] = (width == 64 ? -1L : ((1L << width) - 1)) << start;
+            start += width;
+        }
+        return masks;
+    }
+}
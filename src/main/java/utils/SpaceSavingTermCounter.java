@@ -0,0 +1,232 @@
+package utils;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Approximate word frequency counter with fixed memory, based on the Space-Saving algorithm.
+ * At most capacity words are tracked. When a new word arrives and all counters are taken, the word with the
+ * lowest count is replaced and the new word inherits its count plus its own.
+ *
+ * Guarantees, for N counted appearances: every word appearing more than N / capacity times is tracked,
+ * and a tracked word's count overestimates its true count by at most {@link #getError(int)}, itself at most
+ * N / capacity.
+ *
+ * IDs are counter slots and are reused when a word is replaced. Not thread safe.
+ */
+public class SpaceSavingTermCounter implements TermFrequencies {
+
+    private final int capacity;
+
+    /**
+     * Word, hash, count and overestimation of each slot
+     */
+    private final String[] terms;
+    private final int[] hashes;
+    private final int[] counts;
+    private final int[] errors;
+
+    /**
+     * Min heap of slots by count, and the heap position of each slot
+     */
+    private final int[] heap;
+    private final int[] heapPositions;
+
+    /**
+     * Open addressing table of slots plus one, 0 marks an empty table entry
+     */
+    private final int[] table;
+
+    private int size = 0;
+    private long total = 0;
+
+    /**
+     * @param maxError max overestimation of a count, as a fraction of all counted appearances (e.g. 0.001)
+     */
+    public static SpaceSavingTermCounter withMaxError(double maxError) {
+        if (maxError <= 0 || maxError >= 1)
+            throw new IllegalArgumentException("Max error must be between 0 and 1, was " + maxError);
+        return new SpaceSavingTermCounter((int) Math.ceil(1 / maxError));
+    }
+
+    /**
+     * @param capacity number of tracked words
+     */
+    public SpaceSavingTermCounter(int capacity) {
+        this.capacity = capacity;
+        this.terms = new String[capacity];
+        this.hashes = new int[capacity];
+        this.counts = new int[capacity];
+        this.errors = new int[capacity];
+        this.heap = new int[capacity];
+        this.heapPositions = new int[capacity];
+        this.table = new int[Integer.highestOneBit(Math.max(1, capacity) * 2 - 1) << 1];
+    }
+
+    @Override
+    public int add(char[] chars, int start, int end, int count) {
+        total += count;
+        int hash = TermDictionary.hash(chars, start, end);
+
+        int slot = find(chars, start, end, hash);
+        if (slot >= 0) {
+            counts[slot] += count;
+            siftDown(heapPositions[slot]);
+            return slot;
+        }
+
+        if (size < capacity) {
+            slot = size++;
+            counts[slot] = count;
+            errors[slot] = 0;
+            heap[slot] = slot;
+            heapPositions[slot] = slot;
+            siftUp(slot);
+        } else {
+            // Replace the word with the lowest count
+            slot = heap[0];
+            removeFromTable(slot);
+            errors[slot] = counts[slot];
+            counts[slot] += count;
+            siftDown(0);
+        }
+
+        terms[slot] = new String(chars, start, end - start);
+        hashes[slot] = hash;
+        insertInTable(slot);
+        return slot;
+    }
+
+    @Override
+    public String getTerm(int id) {
+        return terms[id];
+    }
+
+    @Override
+    public int getCount(int id) {
+        return counts[id];
+    }
+
+    /**
+     * Returns the max overestimation of the count of the word with the given ID
+     */
+    public int getError(int id) {
+        return errors[id];
+    }
+
+    /**
+     * Returns the max overestimation of any tracked count, which is also the max count of any untracked word
+     */
+    public int getMaxError() {
+        return size < capacity ? 0 : counts[heap[0]];
+    }
+
+    /**
+     * Returns the number of counted appearances
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void forEachId(IntConsumer action) {
+        for (int id = 0; id < size; id++)
+            action.accept(id);
+    }
+
+    private int find(char[] chars, int start, int end, int hash) {
+        int mask = table.length - 1;
+        int i = hash & mask;
+        while (table[i] != 0) {
+            int slot = table[i] - 1;
+            if (hashes[slot] == hash && equals(terms[slot], chars, start, end))
+                return slot;
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void insertInTable(int slot) {
+        int mask = table.length - 1;
+        int i = hashes[slot] & mask;
+        while (table[i] != 0)
+            i = (i + 1) & mask;
+        table[i] = slot + 1;
+    }
+
+    /**
+     * Removes slot from table, shifting back the following entries of its probe sequence
+     */
+    private void removeFromTable(int slot) {
+        int mask = table.length - 1;
+        int i = hashes[slot] & mask;
+        while (table[i] != slot + 1)
+            i = (i + 1) & mask;
+
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (table[j] == 0)
+                break;
+            int home = hashes[table[j] - 1] & mask;
+            // Move entry j to the hole at i, unless its home lies cyclically in (i, j]
+            boolean homeBetween = i <= j ? (home > i && home <= j) : (home > i || home <= j);
+            if (!homeBetween) {
+                table[i] = table[j];
+                i = j;
+            }
+        }
+        table[i] = 0;
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (counts[heap[parent]] <= counts[heap[position]])
+                break;
+            swap(position, parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int smallest = position;
+            int left = 2 * position + 1;
+            int right = left + 1;
+            if (left < size && counts[heap[left]] < counts[heap[smallest]])
+                smallest = left;
+            if (right < size && counts[heap[right]] < counts[heap[smallest]])
+                smallest = right;
+            if (smallest == position)
+                return;
+            swap(position, smallest);
+            position = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int slot = heap[a];
+        heap[a] = heap[b];
+        heap[b] = slot;
+        heapPositions[heap[a]] = a;
+        heapPositions[heap[b]] = b;
+    }
+
+    private static boolean equals(String term, char[] chars, int start, int end) {
+        if (term.length() != end - start)
+            return false;
+        for (int i = 0; i < term.length(); i++)
+            if (term.charAt(i) != chars[start + i])
+                return false;
+        return true;
+    }
+}
@@ -0,0 +1,76 @@
+package utils;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Thread safe word frequency counter. Words are spread by hash over a number of {@link TermCounter} stripes,
+ * each one guarded by its own lock, so threads counting different words rarely wait for each other.
+ *
+ * IDs encode the stripe in their low bits and the ID inside the stripe in the rest.
+ */
+public class StripedTermCounter implements TermFrequencies {
+
+    private final TermCounter[] stripes;
+    private final int stripeBits;
+
+    /**
+     * @param concurrency expected number of counting threads, rounded up to a power of two stripes
+     */
+    public StripedTermCounter(int concurrency) {
+        int count = Integer.highestOneBit(Math.max(1, concurrency * 4 - 1)) << 1;
+        this.stripeBits = Integer.numberOfTrailingZeros(count);
+        this.stripes = new TermCounter[count];
+        for (int i = 0; i < count; i++)
+            stripes[i] = new TermCounter();
+    }
+
+    @Override
+    public int add(char[] chars, int start, int end, int count) {
+        int stripe = (TermDictionary.hash(chars, start, end) >>> 16) & (stripes.length - 1);
+        TermCounter counter = stripes[stripe];
+        int id;
+        synchronized (counter) {
+            id = counter.add(chars, start, end, count);
+        }
+        return (id << stripeBits) | stripe;
+    }
+
+    @Override
+    public String getTerm(int id) {
+        TermCounter counter = stripes[id & (stripes.length - 1)];
+        synchronized (counter) {
+            return counter.getTerm(id >>> stripeBits);
+        }
+    }
+
+    @Override
+    public int getCount(int id) {
+        TermCounter counter = stripes[id & (stripes.length - 1)];
+        synchronized (counter) {
+            return counter.getCount(id >>> stripeBits);
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (TermCounter counter : stripes) {
+            synchronized (counter) {
+                size += counter.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public void forEachId(IntConsumer action) {
+        for (int stripe = 0; stripe < stripes.length; stripe++) {
+            int size;
+            synchronized (stripes[stripe]) {
+                size = stripes[stripe].size();
+            }
+            for (int id = 0; id < size; id++)
+                action.accept((id << stripeBits) | stripe);
+        }
+    }
+}
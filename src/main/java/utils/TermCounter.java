@@ -0,0 +1,87 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Word frequency counter backed by a {@link TermDictionary} and an int array of counts indexed by word ID.
+ * No word appearance is boxed. Not thread safe, see {@link StripedTermCounter}.
+ */
+public class TermCounter implements TermFrequencies {
+
+    private final TermDictionary dictionary = new TermDictionary();
+    private int[] counts = new int[1024];
+
+    @Override
+    public int add(char[] chars, int start, int end, int count) {
+        int id = dictionary.intern(chars, start, end);
+        if (id == counts.length)
+            counts = Arrays.copyOf(counts, counts.length * 2);
+        counts[id] += count;
+        return id;
+    }
+
+    /**
+     * Counts one appearance of word
+     * @return ID of word
+     */
+    public int add(String word) {
+        return add(word, 1);
+    }
+
+    @Override
+    public String getTerm(int id) {
+        return dictionary.getTerm(id);
+    }
+
+    @Override
+    public int getCount(int id) {
+        return counts[id];
+    }
+
+    /**
+     * Returns the appearances of word, 0 if it has never been counted
+     */
+    public int getCount(String word) {
+        int id = dictionary.find(word);
+        return id < 0 ? 0 : counts[id];
+    }
+
+    @Override
+    public int size() {
+        return dictionary.size();
+    }
+
+    @Override
+    public void forEachId(IntConsumer action) {
+        for (int id = 0; id < size(); id++)
+            action.accept(id);
+    }
+
+    /**
+     * Sorts ids by their count in frequencies, most frequent first and lower ID first on ties.
+     * Sorting packs count and ID in a primitive long, so no comparator or boxing is involved.
+     */
+    static int[] sortByCountDescending(int[] ids, TermFrequencies frequencies) {
+        long[] keys = new long[ids.length];
+        for (int i = 0; i < ids.length; i++)
+            keys[i] = sortKey(frequencies.getCount(ids[i]), ids[i]);
+        Arrays.sort(keys);
+
+        int[] sorted = new int[ids.length];
+        for (int i = 0; i < keys.length; i++)
+            sorted[i] = idOfSortKey(keys[keys.length - 1 - i]);
+        return sorted;
+    }
+
+    /**
+     * Packs count and ID so that keys sort by count and then by reverse ID
+     */
+    static long sortKey(int count, int id) {
+        return ((long) count << 32) | (0xFFFFFFFFL - (id & 0xFFFFFFFFL));
+    }
+
+    static int idOfSortKey(long key) {
+        return (int) (0xFFFFFFFFL - (key & 0xFFFFFFFFL));
+    }
+}
@@ -0,0 +1,153 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * Interns words to dense int IDs, starting from 0, in the order they are first seen.
+ * Characters of all words are kept in a single shared array and looked up with an open addressing table,
+ * so a word already in the dictionary is found without creating a string.
+ *
+ * Not thread safe, see {@link StripedTermCounter} for concurrent counting.
+ */
+public class TermDictionary {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Characters of all terms, one after the other
+     */
+    private char[] pool = new char[INITIAL_CAPACITY * 8];
+    private int poolSize = 0;
+
+    /**
+     * Start offset in pool, length and hash of each term, by ID
+     */
+    private int[] offsets = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+
+    /**
+     * String of each term, created when first asked for
+     */
+    private String[] strings = new String[INITIAL_CAPACITY];
+
+    /**
+     * Open addressing table of term IDs plus one, 0 marks an empty slot
+     */
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+
+    private int size = 0;
+
+    /**
+     * Returns the ID of the characters of chars between start (inclusive) and end (exclusive),
+     * adding them to dictionary if they are not already there
+     */
+    public int intern(char[] chars, int start, int end) {
+        int hash = hash(chars, start, end);
+        int mask = table.length - 1;
+
+        int slot = hash & mask;
+        while (table[slot] != 0) {
+            int id = table[slot] - 1;
+            if (hashes[id] == hash && equals(id, chars, start, end))
+                return id;
+            slot = (slot + 1) & mask;
+        }
+
+        int id = add(chars, start, end, hash);
+        table[slot] = id + 1;
+
+        if (size * 2 > table.length)
+            rehash();
+
+        return id;
+    }
+
+    /**
+     * Returns the ID of term, -1 if it is not in dictionary
+     */
+    public int find(String term) {
+        char[] chars = term.toCharArray();
+        int hash = hash(chars, 0, chars.length);
+        int mask = table.length - 1;
+
+        int slot = hash & mask;
+        while (table[slot] != 0) {
+            int id = table[slot] - 1;
+            if (hashes[id] == hash && equals(id, chars, 0, chars.length))
+                return id;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the term with the given ID
+     */
+    public String getTerm(int id) {
+        String term = strings[id];
+        if (term == null) {
+            term = new String(pool, offsets[id], lengths[id]);
+            strings[id] = term;
+        }
+        return term;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int add(char[] chars, int start, int end, int hash) {
+        int length = end - start;
+
+        if (poolSize + length > pool.length)
+            pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + length));
+        System.arraycopy(chars, start, pool, poolSize, length);
+
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+            strings = Arrays.copyOf(strings, size * 2);
+        }
+
+        offsets[size] = poolSize;
+        lengths[size] = length;
+        hashes[size] = hash;
+        poolSize += length;
+
+        return size++;
+    }
+
+    private void rehash() {
+        int[] newTable = new int[table.length * 2];
+        int mask = newTable.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (newTable[slot] != 0)
+                slot = (slot + 1) & mask;
+            newTable[slot] = id + 1;
+        }
+        table = newTable;
+    }
+
+    private boolean equals(int id, char[] chars, int start, int end) {
+        if (lengths[id] != end - start)
+            return false;
+        int offset = offsets[id];
+        for (int i = start; i < end; i++)
+            if (pool[offset++] != chars[i])
+                return false;
+        return true;
+    }
+
+    /**
+     * Same hash as {@link String#hashCode()}, spread so that low bits depend on all characters
+     */
+    static int hash(char[] chars, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++)
+            h = 31 * h + chars[i];
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,123 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Counts appearances of words, each word identified by an int ID.
+ */
+public interface TermFrequencies {
+
+    /**
+     * Counts one appearance of the word made of the characters of chars between start (inclusive) and end (exclusive)
+     * @return ID of the word
+     */
+    default int add(char[] chars, int start, int end) {
+        return add(chars, start, end, 1);
+    }
+
+    /**
+     * Counts count appearances of the word made of the characters of chars between start (inclusive) and end (exclusive)
+     * @return ID of the word
+     */
+    int add(char[] chars, int start, int end, int count);
+
+    /**
+     * Counts count appearances of word
+     * @return ID of the word
+     */
+    default int add(String word, int count) {
+        return add(word.toCharArray(), 0, word.length(), count);
+    }
+
+    /**
+     * Returns the word with the given ID
+     */
+    String getTerm(int id);
+
+    /**
+     * Returns the appearances of the word with the given ID
+     */
+    int getCount(int id);
+
+    /**
+     * Returns the number of distinct words
+     */
+    int size();
+
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Calls action with the ID of every word
+     */
+    void forEachId(IntConsumer action);
+
+    /**
+     * Returns the IDs of all words, most frequent first
+     */
+    default int[] idsByCountDescending() {
+        int[] ids = new int[size()];
+        int[] i = {0};
+        forEachId(id -> {
+            if (i[0] < ids.length)
+                ids[i[0]++] = id;
+        });
+        return TermCounter.sortByCountDescending(i[0] == ids.length ? ids : Arrays.copyOf(ids, i[0]), this);
+    }
+
+    /**
+     * Returns the IDs of the k most frequent words accepted by filter, most frequent first.
+     * Only a heap of k words is kept, so this costs O(n log k) instead of a full sort.
+     */
+    default int[] topIds(int k, IntPredicate filter) {
+        if (k <= 0)
+            return new int[0];
+
+        // Min heap of count and ID packed like in TermCounter#sortByCountDescending
+        long[] heap = new long[k];
+        int[] size = {0};
+        forEachId(id -> {
+            if (!filter.test(id))
+                return;
+            long key = TermCounter.sortKey(getCount(id), id);
+            if (size[0] < k) {
+                int i = size[0]++;
+                heap[i] = key;
+                while (i > 0 && heap[(i - 1) / 2] > heap[i]) {
+                    long parent = heap[(i - 1) / 2];
+                    heap[(i - 1) / 2] = heap[i];
+                    heap[i] = parent;
+                    i = (i - 1) / 2;
+                }
+            } else if (key > heap[0]) {
+                heap[0] = key;
+                int i = 0;
+                while (true) {
+                    int smallest = i;
+                    int left = 2 * i + 1;
+                    int right = left + 1;
+                    if (left < k && heap[left] < heap[smallest])
+                        smallest = left;
+                    if (right < k && heap[right] < heap[smallest])
+                        smallest = right;
+                    if (smallest == i)
+                        break;
+                    long child = heap[smallest];
+                    heap[smallest] = heap[i];
+                    heap[i] = child;
+                    i = smallest;
+                }
+            }
+        });
+
+        long[] keys = Arrays.copyOf(heap, size[0]);
+        Arrays.sort(keys);
+        int[] ids = new int[keys.length];
+        for (int i = 0; i < keys.length; i++)
+            ids[i] = TermCounter.idOfSortKey(keys[keys.length - 1 - i]);
+        return ids;
+    }
+}
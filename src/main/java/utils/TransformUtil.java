@@ -3,6 +3,7 @@ package utils;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.regex.Pattern;
 
 /**
  * Helper class with string manipulation functions.
@@ -11,21 +12,25 @@ import java.util.List;
  */
 public class TransformUtil {
 
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern NON_ALPHABETIC = Pattern.compile("[^A-Za-z\\s]+");
+    private static final Pattern LINK = Pattern.compile("http\\S+");
+
     private TransformUtil(){}
 
     public static List<String> tokenizeToList(String s){
-        return Arrays.asList(s.trim().split("\\s+"));
+        return Arrays.asList(WHITESPACE.split(s.trim()));
     }
 
     public static String onlyAlphabetic(String s){
 
         //s = s.replaceAll("['’]\\S*", " ");
 
-        return s.replaceAll("[^A-Za-z\\s]+", "");
+        return NON_ALPHABETIC.matcher(s).replaceAll("");
     }
 
     public static String clearLinks(String s) {
-        return s.replaceAll("http\\S+", "");
+        return LINK.matcher(s).replaceAll("");
     }
 
     public static String removeCollectionKeyword(String tweet, String collectionName) {
@@ -0,0 +1,184 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Single-pass, regex free replacement of the {@link TransformUtil} chain
+ * clearLinks, removeCollectionKeyword, onlyAlphabetic, normalize and tokenizeToList.
+ * The tweet text is scanned once into a reusable buffer, dropping links and keyword occurrences,
+ * and the buffer is then scanned once more to keep only ASCII letters, lower case them and
+ * record the span of each word.
+ *
+ * Keywords are matched literally and case sensitively with an {@link AhoCorasick} automaton, after links
+ * have been removed. Occurrences are removed left to right without overlaps; when several keywords end at
+ * the same character the longest is removed. For a single keyword without regex meta characters this is
+ * exactly what the regex chain does.
+ *
+ * Instances reuse their buffers between calls and are not thread safe.
+ */
+public class TweetScanner {
+
+    private static final int INITIAL_CAPACITY = 280;
+
+    /**
+     * Automaton of removed keywords, null if there are none
+     */
+    private final AhoCorasick keywords;
+    private final boolean clearLinks;
+
+    private char[] buffer = new char[INITIAL_CAPACITY];
+    private int[] tokenStarts = new int[INITIAL_CAPACITY / 2];
+    private int[] tokenEnds = new int[INITIAL_CAPACITY / 2];
+    private int tokenCount;
+
+    /**
+     * @param keyword text removed from tweets, null or empty to keep tweets as they are
+     * @param clearLinks whether links should be removed
+     */
+    public TweetScanner(String keyword, boolean clearLinks) {
+        this(keyword == null ? Collections.<String>emptyList() : Collections.singletonList(keyword), clearLinks);
+    }
+
+    /**
+     * @param keywords texts removed from tweets, empty to keep tweets as they are
+     * @param clearLinks whether links should be removed
+     */
+    public TweetScanner(Collection<String> keywords, boolean clearLinks) {
+        List<String> nonEmpty = keywords.stream().filter(k -> !k.isEmpty()).distinct().collect(Collectors.toList());
+        this.keywords = nonEmpty.isEmpty() ? null : new AhoCorasick(nonEmpty, false);
+        this.clearLinks = clearLinks;
+    }
+
+    /**
+     * Scans text and replaces the tokens of the previous scan with the tokens of text
+     * @return number of tokens
+     */
+    public int scan(CharSequence text) {
+
+        int length = removeLinksAndKeyword(text);
+
+        // Keep only letters and whitespace, lower case letters and split on whitespace
+        tokenCount = 0;
+        int write = 0;
+        int tokenStart = -1;
+        for (int read = 0; read < length; read++) {
+            char c = buffer[read];
+            if (c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z') {
+                if (tokenStart < 0)
+                    tokenStart = write;
+                buffer[write++] = (char) (c | 0x20);
+            } else if (isWhitespace(c) && tokenStart >= 0) {
+                addToken(tokenStart, write);
+                tokenStart = -1;
+            }
+        }
+        if (tokenStart >= 0)
+            addToken(tokenStart, write);
+
+        return tokenCount;
+    }
+
+    public int getTokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * Returns the buffer holding the tokens, see {@link #getTokenStart(int)} and {@link #getTokenEnd(int)}
+     */
+    public char[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the buffer index of the first character of i-th token
+     */
+    public int getTokenStart(int i) {
+        return tokenStarts[i];
+    }
+
+    /**
+     * Returns the buffer index after the last character of i-th token
+     */
+    public int getTokenEnd(int i) {
+        return tokenEnds[i];
+    }
+
+    /**
+     * Returns i-th token as a new string
+     */
+    public String getToken(int i) {
+        return new String(buffer, tokenStarts[i], tokenEnds[i] - tokenStarts[i]);
+    }
+
+    /**
+     * Copies text into buffer, skipping links and keyword occurrences
+     * @return number of characters copied
+     */
+    private int removeLinksAndKeyword(CharSequence text) {
+
+        int length = text.length();
+        if (buffer.length < length)
+            buffer = new char[Math.max(length, buffer.length * 2)];
+
+        int write = 0;
+
+        // The automaton restarts after each removal, so that occurrences never overlap, like replaceAll does
+        int state = AhoCorasick.ROOT;
+
+        int read = 0;
+        while (read < length) {
+
+            // A link is "http" followed by at least one non whitespace character, up to next whitespace
+            if (clearLinks && isLinkStart(text, read)) {
+                read += 4;
+                while (read < length && !isWhitespace(text.charAt(read)))
+                    read++;
+                continue;
+            }
+
+            char c = text.charAt(read++);
+            buffer[write++] = c;
+
+            if (keywords != null) {
+                state = keywords.next(state, c);
+                int match = keywords.longestMatchLength(state);
+                if (match > 0) {
+                    write -= match;
+                    state = AhoCorasick.ROOT;
+                }
+            }
+        }
+
+        return write;
+    }
+
+    private static boolean isLinkStart(CharSequence text, int i) {
+        return i + 4 < text.length() &&
+                text.charAt(i) == 'h' &&
+                text.charAt(i + 1) == 't' &&
+                text.charAt(i + 2) == 't' &&
+                text.charAt(i + 3) == 'p' &&
+                !isWhitespace(text.charAt(i + 4));
+    }
+
+    private void addToken(int start, int end) {
+        if (tokenCount == tokenStarts.length) {
+            tokenStarts = Arrays.copyOf(tokenStarts, tokenCount * 2);
+            tokenEnds = Arrays.copyOf(tokenEnds, tokenCount * 2);
+        }
+        tokenStarts[tokenCount] = start;
+        tokenEnds[tokenCount] = end;
+        tokenCount++;
+    }
+
+    /**
+     * Whitespace as defined by \s of java regular expressions
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
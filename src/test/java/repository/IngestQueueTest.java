@@ -0,0 +1,178 @@
+package repository;
+
+import domain.TweetModel;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IngestQueueTest {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * tweetIDs consumed, in order
+     */
+    private final List<Long> consumed = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Holds the consumer on the item it takes until opened, so that the next items stay queued
+     */
+    private final CountDownLatch firstTaken = new CountDownLatch(1);
+    private volatile CountDownLatch gate = new CountDownLatch(1);
+
+    private IngestQueue<TweetModel> queue;
+
+    @After
+    public void tearDown() {
+        gate.countDown();
+        if (queue != null)
+            queue.close();
+    }
+
+    @Test
+    public void dropOldestCountsDroppedItems() throws Exception {
+        queue = newQueue(IngestQueue.OverflowPolicy.DROP_OLDEST, 4);
+        holdConsumer();
+
+        // 1 to 4 fill the buffer, 5 to 10 each drop the oldest queued item
+        for (long id = 1; id <= 10; id++)
+            assertTrue(queue.put(tweet(id)));
+        assertEquals(6, queue.getDropped());
+        assertEquals(4, queue.getDepth());
+
+        gate.countDown();
+        queue.close();
+        assertEquals(ids(0, 7, 8, 9, 10), consumed);
+        assertEquals(11, queue.getOffered());
+        assertEquals(5, queue.getConsumed());
+    }
+
+    @Test
+    public void spillKeepsOrderAndTruncatesFile() throws Exception {
+        Path spillFile = folder.getRoot().toPath().resolve("test.spill");
+        queue = newSpillQueue(spillFile);
+        holdConsumer();
+
+        // 1 to 4 fill the buffer, the next ones are spilled, and stay behind the spilled ones once memory is free
+        for (long id = 1; id <= 20; id++)
+            assertTrue(queue.put(tweet(id)));
+        assertEquals(16, queue.getSpilled());
+        assertEquals(20, queue.getDepth());
+        assertTrue(Files.size(spillFile) > 0);
+
+        gate.countDown();
+        awaitConsumed(21);
+        assertEquals(ids(0, 20), consumed);
+        assertEquals(0, queue.getDepth());
+        assertEquals(0, Files.size(spillFile));
+
+        // The truncated file is written from its start again: the consumer holds at most one item and the
+        // buffer four, so most of the next ones are spilled
+        gate = new CountDownLatch(1);
+        for (long id = 21; id <= 40; id++)
+            assertTrue(queue.put(tweet(id)));
+        assertTrue(queue.getSpilled() >= 16 + 15);
+        gate.countDown();
+        awaitConsumed(41);
+        assertEquals(ids(0, 40), consumed);
+        assertEquals(0, Files.size(spillFile));
+    }
+
+    @Test
+    public void closeDrainsBufferAndSpillFile() throws Exception {
+        Path spillFile = folder.getRoot().toPath().resolve("close.spill");
+        queue = newSpillQueue(spillFile);
+        holdConsumer();
+
+        for (long id = 1; id <= 50; id++)
+            assertTrue(queue.put(tweet(id)));
+        assertTrue(queue.getSpilled() > 0);
+
+        gate.countDown();
+        queue.close();
+
+        assertEquals(ids(0, 50), consumed);
+        assertEquals(0, queue.getDepth());
+        assertFalse(Files.exists(spillFile));
+        assertFalse(queue.put(tweet(51)));
+    }
+
+    private IngestQueue<TweetModel> newQueue(IngestQueue.OverflowPolicy policy, int capacity) throws IOException {
+        return new IngestQueue.Builder<TweetModel>()
+                .setCapacity(capacity)
+                .setOverflowPolicy(policy)
+                .setName("test")
+                .create(this::consume);
+    }
+
+    private IngestQueue<TweetModel> newSpillQueue(Path spillFile) throws IOException {
+        return new IngestQueue.Builder<TweetModel>()
+                .setCapacity(4)
+                .setOverflowPolicy(IngestQueue.OverflowPolicy.SPILL)
+                .setSpillFile(spillFile)
+                .setCodec(new TweetModelCodec())
+                .setName("test")
+                .create(this::consume);
+    }
+
+    private void consume(TweetModel tweet) {
+        if (tweet.getTweetID() == 0)
+            firstTaken.countDown();
+        try {
+            gate.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        consumed.add(tweet.getTweetID());
+    }
+
+    /**
+     * Queues tweet 0 and waits until the consumer holds it
+     */
+    private void holdConsumer() throws InterruptedException {
+        assertTrue(queue.put(tweet(0)));
+        assertTrue(firstTaken.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    private void awaitConsumed(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (queue.getConsumed() < count && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertEquals(count, queue.getConsumed());
+    }
+
+    private static TweetModel tweet(long id) {
+        return new TweetModel.Builder().setTweetID(id).setTweetText("tweet " + id).create();
+    }
+
+    private static List<Long> ids(long first, long last) {
+        List<Long> ids = new ArrayList<>();
+        for (long id = first; id <= last; id++)
+            ids.add(id);
+        return ids;
+    }
+
+    private static List<Long> ids(long... values) {
+        List<Long> ids = new ArrayList<>();
+        for (long id : values)
+            ids.add(id);
+        return ids;
+    }
+}
@@ -0,0 +1,89 @@
+package utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RingBufferTest {
+
+    @Test
+    public void roundsCapacityUpToPowerOfTwo() {
+        assertEquals(1, new RingBuffer<Integer>(1).capacity());
+        assertEquals(8, new RingBuffer<Integer>(5).capacity());
+        assertEquals(8, new RingBuffer<Integer>(8).capacity());
+    }
+
+    @Test
+    public void isFirstInFirstOutAndBounded() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(4);
+        assertNull(buffer.poll());
+
+        // Several laps around the ring
+        int next = 0;
+        for (int lap = 0; lap < 3; lap++) {
+            for (int i = 0; i < 4; i++)
+                assertTrue(buffer.offer(lap * 4 + i));
+            assertFalse(buffer.offer(-1));
+            assertEquals(4, buffer.size());
+
+            for (int i = 0; i < 4; i++)
+                assertEquals(Integer.valueOf(next++), buffer.poll());
+            assertNull(buffer.poll());
+            assertTrue(buffer.isEmpty());
+        }
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void rejectsNull() {
+        new RingBuffer<Integer>(4).offer(null);
+    }
+
+    /**
+     * One producer and several consumers on a small ring: every element is polled exactly once
+     */
+    @Test
+    public void deliversEveryElementOnceToConcurrentConsumers() throws InterruptedException {
+        final int elements = 200_000;
+        final int consumers = 4;
+        RingBuffer<Integer> buffer = new RingBuffer<>(64);
+        AtomicIntegerArray deliveries = new AtomicIntegerArray(elements);
+        AtomicLong polled = new AtomicLong();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < consumers; c++) {
+            threads.add(new Thread(() -> {
+                while (polled.get() < elements) {
+                    Integer element = buffer.poll();
+                    if (element != null) {
+                        deliveries.incrementAndGet(element);
+                        polled.incrementAndGet();
+                    } else {
+                        Thread.yield();
+                    }
+                }
+            }));
+        }
+        threads.add(new Thread(() -> {
+            for (int i = 0; i < elements; i++)
+                while (!buffer.offer(i))
+                    Thread.yield();
+        }));
+
+        threads.forEach(Thread::start);
+        for (Thread t : threads)
+            t.join(60000);
+
+        assertEquals(elements, polled.get());
+        for (int i = 0; i < elements; i++)
+            assertEquals("Deliveries of element " + i, 1, deliveries.get(i));
+        assertNull(buffer.poll());
+    }
+}
@@ -0,0 +1,94 @@
+package utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the tokens of {@link TweetScanner} with the tokens of the {@link TransformUtil} chain it replaces
+ */
+public class TweetScannerTest {
+
+    private static final String KEYWORD = "music";
+
+    /**
+     * Pieces of the generated texts: words, keyword fragments, links, digits, punctuation, non ASCII letters
+     * and every whitespace of \s
+     */
+    private static final String[] PIECES = {
+            "love", "The", "new", "SONG", "a", "is", "it", "x",
+            "music", "Music", "MUSIC", "mus", "ic", "musi", "#music", "musicmusic",
+            "http://t.co/abc", "https://example.com/a?b=c", "http", "http:", "xhttpy", "https",
+            "123", "4u", "!", "?", ",", ".", "'", "’", "#", "@", "-", "_",
+            "été", "Ä", "ß", "❤", "🎵",
+            " ", " ", " ", "  ", "\t", "\n", "\r", "\f", "\u000B"
+    };
+
+    @Test
+    public void sameTokensAsTransformChain() {
+        TweetScanner scanner = new TweetScanner(KEYWORD, true);
+        Random random = new Random(42);
+
+        for (int i = 0; i < 300000; i++) {
+            StringBuilder text = new StringBuilder();
+            int pieces = random.nextInt(30);
+            for (int p = 0; p < pieces; p++)
+                text.append(PIECES[random.nextInt(PIECES.length)]);
+
+            assertEquals(text.toString(), transformChain(text.toString()), tokens(scanner, text.toString()));
+        }
+    }
+
+    @Test
+    public void removesLinksAndKeyword() {
+        TweetScanner scanner = new TweetScanner(KEYWORD, true);
+
+        assertEquals(tokens("i", "love"), tokens(scanner, "I love #music http://t.co/abc"));
+        assertEquals(tokens("romusicck"), tokens(scanner, "roMUSICck musicmusic"));
+        assertEquals(tokens("rock"), tokens(scanner, "ro" + KEYWORD + "ck"));
+        assertEquals(tokens(), tokens(scanner, "!!! 123 ❤"));
+    }
+
+    @Test
+    public void keepsLinksWithoutClearLinks() {
+        TweetScanner scanner = new TweetScanner((String) null, false);
+
+        assertEquals(tokens("see", "httptcoabc"), tokens(scanner, "See http://t.co/abc"));
+    }
+
+    /**
+     * Tokens of the chain clearLinks, removeCollectionKeyword, onlyAlphabetic, normalize and tokenizeToList.
+     * A text without words gives no tokens, instead of the single empty token of split.
+     */
+    private static List<String> transformChain(String text) {
+        String transformed = TransformUtil.clearLinks(text);
+        transformed = TransformUtil.removeCollectionKeyword(transformed, KEYWORD);
+        transformed = TransformUtil.onlyAlphabetic(transformed);
+        transformed = TransformUtil.normalize(transformed);
+
+        List<String> tokens = new ArrayList<>();
+        for (String token : TransformUtil.tokenizeToList(transformed))
+            if (!token.isEmpty())
+                tokens.add(token);
+        return tokens;
+    }
+
+    private static List<String> tokens(TweetScanner scanner, String text) {
+        int count = scanner.scan(text);
+        List<String> tokens = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            tokens.add(scanner.getToken(i));
+        return tokens;
+    }
+
+    private static List<String> tokens(String... tokens) {
+        List<String> list = new ArrayList<>();
+        for (String token : tokens)
+            list.add(token);
+        return list;
+    }
+}